@@ -5,6 +5,7 @@ import java.util.List;
 public class CmdValidation {
     public boolean has_file_data;
     public boolean has_inline_data;
+    public boolean has_output;
     private int count_v;
     private int count_d ;
     private int count_f;
@@ -16,6 +17,7 @@ public class CmdValidation {
         this.count_v = count(args, "-v");
         this.count_d = count(args, "-d");
         this.count_f = count(args, "-f");
+        this.has_output = Arrays.asList(args).contains("-o");
         this.requestHeaders = new ArrayList<String>();
     }
 
@@ -28,14 +30,17 @@ public class CmdValidation {
         }
         // print httpc help get
         if(args[0].equalsIgnoreCase("get")){
-            if((has_file_data || has_inline_data) || count_v > 1){
+            boolean resume = Arrays.asList(args).contains("--resume");
+            if((has_file_data || has_inline_data) || count_v > 1 || (resume && !has_output) || (has_output && count_urls(args) > 1)){
                 help_get();
                 System.exit(0);
             }
         }
         // print httpc help post
         if(args[0].equalsIgnoreCase("post")){
-            if((has_file_data && has_inline_data) || count_v > 1 || count_d > 1 || count_f > 1){
+            // --resume asks for a Range, which only a GET has
+            boolean resume = Arrays.asList(args).contains("--resume");
+            if((has_file_data && has_inline_data) || count_v > 1 || count_d > 1 || count_f > 1 || resume){
                 help_post();
                 System.exit(0);
             }
@@ -54,22 +59,43 @@ public class CmdValidation {
         System.out.println("Use \"httpc help [command]\" for more information about a command.");
     }
     public void help_get(){
-        System.out.println("usage: httpc get [-v] [-h key:value] URL");
+        System.out.println("usage: httpc get [-v] [-h key:value] [--fast-open] [--fec] [-o file [--resume]] URL [URL...]");
         System.out.println("Get executes a HTTP GET request for a given URL.");
+        System.out.println("Several URLs are requested at once over one connection, each on its own stream, and their responses printed in order.");
         System.out.println("    -v             Prints the detail of the response such as protocol, status, and headers.");
         System.out.println("    -h key:value   Associates headers to HTTP Request with the format 'key:value'.");
+        System.out.println("    --fast-open    Sends the request in the SYN with the cookie of a previous connection.");
+        System.out.println("    --fec          Adds a parity packet every 8 packets, so a single loss is repaired without a retransmission.");
+        System.out.println("    -o file        Saves the body of the response to file, with a single URL.");
+        System.out.println("    --resume       Asks only for the bytes after those already saved in the -o file.");
     }
     public void help_post(){
-        System.out.println("usage: httpc post [-v] [-h key:value] [-d inline-data] [-f file] URL");
+        System.out.println("usage: httpc post [-v] [-h key:value] [-d inline-data] [-f file] [--fast-open] [--fec] [--compress] URL [URL...]");
         System.out.println("Post executes a HTTP POST request for a given URL with inline data or from file.");
+        System.out.println("Several URLs are requested at once over one connection, each on its own stream, and their responses printed in order.");
         System.out.println("    -v             Prints the detail of the response such as protocol, status, and headers.");
         System.out.println("    -h key:value   Associates headers to HTTP Request with the format 'key:value'.");
         System.out.println("    -d string      Associates an inline data to the body HTTP POST request.");
         System.out.println("    -f file        Associates the content of a file to the body HTTP POST request.");
+        System.out.println("    --fast-open    Sends the request in the SYN with the cookie of a previous connection.");
+        System.out.println("    --fec          Adds a parity packet every 8 packets, so a single loss is repaired without a retransmission.");
+        System.out.println("    --compress     Sends the body gzipped with Content-Encoding: gzip.");
         System.out.println("Either [-d] or [-f] can be used but not both.");
     }
 
     // Count how many how many -v/-h/-d are in the command.
+    private int count_urls(String[] args){
+
+        int total = 0;
+
+        for(String arg: args){
+            if(arg.matches("https?://.*"))
+                total++;
+        }
+
+        return total;
+    }
+
     private int count(String[] args, String command){
 
         int total = 0;
@@ -0,0 +1,118 @@
+package UDP;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AckPayload is the binary payload of an ACK packet, in BigEndian:
+ * sequence number (4 bytes) | cumulative ACK (4) | SACK block count (1) | count * (start (4) | end (4))
+ * The sequence number is the packet that triggered the ACK and gives the RTT sample, the cumulative ACK is the
+ * next sequence number the receiver expects, so every packet below it arrived, and each SACK block [start, end)
+ * is a run of packets received out of order above it.
+ */
+public class AckPayload {
+
+    public static final int HEADER_LEN = 9;
+    public static final int BLOCK_LEN = 8;
+    public static final int MAX_SACK_BLOCKS = 16;
+    public static final int MAX_LEN = HEADER_LEN + MAX_SACK_BLOCKS * BLOCK_LEN;
+
+    private final long sequenceNumber;
+    private final long cumulative;
+    private final long[] starts;
+    private final long[] ends;
+
+    private AckPayload(long sequenceNumber, long cumulative, long[] starts, long[] ends) {
+        this.sequenceNumber = sequenceNumber;
+        this.cumulative = cumulative;
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Writes the ACK of a packet into an array
+     * @param sequenceNumber sequence number of the packet acknowledged
+     * @param receiver SelectiveRepeatReceiver that got it, or null when the packet is not part of a message
+     * @param dst array at least MAX_LEN long
+     * @return number of bytes written
+     */
+    public static int encode(long sequenceNumber, SelectiveRepeatReceiver receiver, byte[] dst) {
+        ByteBuffer buf = ByteBuffer.wrap(dst);
+        buf.putInt((int) sequenceNumber);
+        if (receiver == null) {
+            buf.putInt((int) (sequenceNumber + 1));
+            buf.put((byte) 0);
+            return buf.position();
+        }
+
+        buf.putInt((int) receiver.getNextSequenceNumber());
+        int count_at = buf.position();
+        buf.put((byte) 0);
+        int count = receiver.writeSackBlocks(buf, MAX_SACK_BLOCKS);
+        dst[count_at] = (byte) count;
+        return buf.position();
+    }
+
+    /**
+     * @param payload payload of an ACK packet
+     * @return AckPayload object, or null if the payload is too short
+     */
+    public static AckPayload parse(byte[] payload) {
+        if (payload.length < HEADER_LEN)
+            return null;
+
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        long sequenceNumber = Integer.toUnsignedLong(buf.getInt());
+        long cumulative = Integer.toUnsignedLong(buf.getInt());
+        int count = Math.min(Math.min(Byte.toUnsignedInt(buf.get()), MAX_SACK_BLOCKS), buf.remaining() / BLOCK_LEN);
+
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = Integer.toUnsignedLong(buf.getInt());
+            ends[i] = Integer.toUnsignedLong(buf.getInt());
+        }
+        return new AckPayload(sequenceNumber, cumulative, starts, ends);
+    }
+
+    /**
+     * @return sequence number of the packet that triggered the ACK
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @return the next sequence number expected, every packet below it was received
+     */
+    public long getCumulative() {
+        return cumulative;
+    }
+
+    public int getBlockCount() {
+        return starts.length;
+    }
+
+    /**
+     * @param i index of the SACK block
+     * @return first sequence number of the block
+     */
+    public long getBlockStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * @param i index of the SACK block
+     * @return sequence number following the block
+     */
+    public long getBlockEnd(int i) {
+        return ends[i];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append(sequenceNumber).append(" cum=").append(cumulative);
+        for (int i = 0; i < starts.length; i++)
+            sb.append(" [").append(starts[i]).append(',').append(ends[i]).append(')');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package UDP;
+
+/**
+ * BbrController is a simplified BBR. Instead of reacting to losses it estimates the bottleneck bandwidth
+ * (the highest delivery rate of the last rounds) and the propagation delay (the lowest RTT of the last
+ * 10 seconds), paces packets at a gain times that bandwidth and keeps about two bandwidth-delay products
+ * in flight, so the router queue stays short while the link is full.
+ * STARTUP doubles the rate every round until the bandwidth stops growing, DRAIN empties the queue STARTUP
+ * built, PROBE_BW cycles the gain around 1 to follow changes and PROBE_RTT shrinks cwnd for a moment to
+ * measure the delay again. A round lasts one min RTT.
+ */
+public class BbrController implements CongestionController {
+
+    private enum Mode { STARTUP, DRAIN, PROBE_BW, PROBE_RTT }
+
+    private static final double HIGH_GAIN = 2.885;
+    private static final double[] PROBE_BW_GAINS = {1.25, 0.75, 1, 1, 1, 1, 1, 1};
+    private static final int BW_WINDOW_ROUNDS = 10;
+    private static final long MIN_RTT_WINDOW = 10000;
+    private static final long PROBE_RTT_DURATION = 200;
+    private static final int PROBE_RTT_CWND = 4;
+
+    private Mode mode = Mode.STARTUP;
+    private final double[] bw_rounds = new double[BW_WINDOW_ROUNDS];
+    private int bw_round = 0;
+    private double btl_bw = 0;
+    private long min_rtt = -1;
+    private long min_rtt_stamp;
+    private long round_start = -1;
+    private double full_bw = 0;
+    private int full_bw_rounds = 0;
+    private int cycle_index = 0;
+    private long probe_rtt_done = -1;
+    // Lowest RTT of the samples taken during PROBE_RTT
+    private long probe_min_rtt = -1;
+    private double pacing_gain = HIGH_GAIN;
+    private double cwnd_gain = HIGH_GAIN;
+    private boolean timed_out = false;
+
+    @Override
+    public void onAck(long now, long rtt, double delivery_rate, int in_flight) {
+        timed_out = false;
+
+        if (rtt >= 0) {
+            if (mode == Mode.PROBE_RTT)
+                probe_min_rtt = probe_min_rtt < 0 ? rtt : Math.min(probe_min_rtt, rtt);
+            if (min_rtt < 0 || rtt <= min_rtt) {
+                min_rtt = rtt;
+                min_rtt_stamp = now;
+            }
+            // An expired min RTT is measured again once PROBE_RTT has drained the queue, not from this sample
+            else if (mode != Mode.PROBE_RTT && now - min_rtt_stamp > MIN_RTT_WINDOW) {
+                enterProbeRtt(now);
+            }
+        }
+
+        if (delivery_rate > 0) {
+            bw_rounds[bw_round] = Math.max(bw_rounds[bw_round], delivery_rate);
+            btl_bw = 0;
+            for (double bw : bw_rounds)
+                btl_bw = Math.max(btl_bw, bw);
+        }
+
+        if (round_start < 0)
+            round_start = now;
+        if (now - round_start >= roundLength()) {
+            round_start = now;
+            onRoundEnd(now);
+        }
+
+        if (mode == Mode.DRAIN && in_flight <= bdp())
+            enterProbeBw();
+        if (mode == Mode.PROBE_RTT && now >= probe_rtt_done) {
+            if (probe_min_rtt >= 0)
+                min_rtt = probe_min_rtt;
+            min_rtt_stamp = now;
+            if (full_bw_rounds >= 3)
+                enterProbeBw();
+            else
+                setMode(Mode.STARTUP, HIGH_GAIN, HIGH_GAIN);
+        }
+    }
+
+    @Override
+    public void onLoss(long now) {
+        // The model does not change with random losses
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        timed_out = true;
+    }
+
+    @Override
+    public int getCwnd() {
+        if (timed_out || mode == Mode.PROBE_RTT)
+            return PROBE_RTT_CWND;
+        if (btl_bw == 0 || min_rtt < 0)
+            return INITIAL_CWND;
+        int cwnd = (int) Math.ceil(cwnd_gain * bdp());
+        return Math.min(Math.max(cwnd, PROBE_RTT_CWND), MAX_CWND);
+    }
+
+    @Override
+    public double getPacingRate() {
+        return pacing_gain * btl_bw;
+    }
+
+    @Override
+    public String getName() {
+        return "bbr";
+    }
+
+    /**
+     * @return packets in flight on a full link with an empty queue
+     */
+    private double bdp() {
+        return btl_bw * Math.max(1, min_rtt);
+    }
+
+    private long roundLength() {
+        return Math.max(1, min_rtt);
+    }
+
+    private void onRoundEnd(long now) {
+        bw_round = (bw_round + 1) % BW_WINDOW_ROUNDS;
+        bw_rounds[bw_round] = 0;
+
+        switch (mode) {
+            case STARTUP:
+                // The link is full once the bandwidth grows less than 25% in 3 rounds
+                if (btl_bw >= full_bw * 1.25) {
+                    full_bw = btl_bw;
+                    full_bw_rounds = 0;
+                }
+                else if (++full_bw_rounds >= 3) {
+                    setMode(Mode.DRAIN, 1 / HIGH_GAIN, HIGH_GAIN);
+                }
+                break;
+            case PROBE_BW:
+                cycle_index = (cycle_index + 1) % PROBE_BW_GAINS.length;
+                pacing_gain = PROBE_BW_GAINS[cycle_index];
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void enterProbeBw() {
+        setMode(Mode.PROBE_BW, 1, 2);
+        cycle_index = 0;
+        pacing_gain = PROBE_BW_GAINS[cycle_index];
+    }
+
+    private void enterProbeRtt(long now) {
+        setMode(Mode.PROBE_RTT, 1, 1);
+        probe_min_rtt = -1;
+        probe_rtt_done = now + Math.max(PROBE_RTT_DURATION, roundLength());
+    }
+
+    private void setMode(Mode mode, double pacing_gain, double cwnd_gain) {
+        this.mode = mode;
+        this.pacing_gain = pacing_gain;
+        this.cwnd_gain = cwnd_gain;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s cwnd=%d btl_bw=%.1fpkt/ms min_rtt=%dms", getName(), mode, getCwnd(), btl_bw, min_rtt);
+    }
+}
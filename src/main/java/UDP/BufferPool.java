@@ -0,0 +1,63 @@
+package UDP;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * BufferPool recycles direct ByteBuffers of one packet each. The initial buffers are slices of a single
+ * direct allocation; when the pool is empty a new buffer is allocated and kept on release while the pool
+ * has room for it. Direct buffers are handed to the DatagramChannel as they are, without the temporary copy
+ * the JDK makes for heap buffers. It is not thread safe, each EventLoop has its own pool.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_BUFFERS = 256;
+
+    private final int buffer_size;
+    private final int max_buffers;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    /**
+     * Constructor for the BufferPool class.
+     * @param buffer_size size of each buffer
+     * @param max_buffers number of buffers allocated upfront, and kept at most
+     */
+    public BufferPool(int buffer_size, int max_buffers) {
+        this.buffer_size = buffer_size;
+        this.max_buffers = max_buffers;
+
+        ByteBuffer slab = ByteBuffer.allocateDirect(buffer_size * max_buffers);
+        for (int i = 0; i < max_buffers; i++) {
+            slab.limit((i + 1) * buffer_size).position(i * buffer_size);
+            free.push(slab.slice().order(ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    /**
+     * @return a cleared buffer in BigEndian
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null)
+            buf = ByteBuffer.allocateDirect(buffer_size).order(ByteOrder.BIG_ENDIAN);
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Gives a buffer back to the pool
+     * @param buf ByteBuffer object obtained from acquire, may be null
+     */
+    public void release(ByteBuffer buf) {
+        if (buf != null && free.size() < max_buffers)
+            free.push(buf);
+    }
+
+    /**
+     * @return the number of buffers ready to be acquired
+     */
+    public int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,79 @@
+package UDP;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ByteRange is the single range of bytes of a Range header, "bytes=first-last", "bytes=first-" or "bytes=-suffix",
+ * resolved against the length of the file requested. A header with several ranges or another unit is ignored and
+ * the whole file is sent, as HTTP allows. A range that starts after the end of the file is not satisfiable.
+ */
+public class ByteRange {
+
+    private static final Pattern RANGE = Pattern.compile("\\s*bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*");
+
+    private final long start;
+    private final long end;
+    private final long length;
+
+    private ByteRange(long start, long end, long length) {
+        this.start = start;
+        this.end = end;
+        this.length = length;
+    }
+
+    /**
+     * @param range value of the Range header, or null
+     * @param length length of the file
+     * @return the range requested, or null if the whole file is sent
+     */
+    public static ByteRange parse(String range, long length) {
+        if (range == null)
+            return null;
+        Matcher m = RANGE.matcher(range);
+        if (!m.matches() || (m.group(1).isEmpty() && m.group(2).isEmpty()))
+            return null;
+
+        try {
+            if (m.group(1).isEmpty()) {
+                long suffix = Long.parseLong(m.group(2));
+                return new ByteRange(Math.max(0, length - suffix), length, length);
+            }
+            long start = Long.parseLong(m.group(1));
+            long end = m.group(2).isEmpty() ? length : Math.min(length, Long.parseLong(m.group(2)) + 1);
+            if (end <= start && start < length)
+                return null;
+            return new ByteRange(start, end, length);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return false if the range has no byte of the file, the response is then 416
+     */
+    public boolean isSatisfiable() {
+        return start < length && start < end;
+    }
+
+    /**
+     * @return offset of the first byte of the range
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return number of bytes of the range
+     */
+    public long getLength() {
+        return end - start;
+    }
+
+    /**
+     * @return value of the Content-Range header of the response
+     */
+    public String contentRange() {
+        return isSatisfiable() ? "bytes " + start + "-" + (end - 1) + "/" + length : "bytes */" + length;
+    }
+}
@@ -0,0 +1,40 @@
+package UDP;
+
+/**
+ * Congestion control algorithms a connection can use, selected on httpfs with -c
+ */
+public enum CongestionAlgorithm {
+    RENO,
+    CUBIC,
+    BBR;
+
+    public static final CongestionAlgorithm DEFAULT = CUBIC;
+
+    /**
+     * Creates the controller of one connection
+     * @param rtt RttEstimator of the connection
+     * @return CongestionController object
+     */
+    public CongestionController newController(RttEstimator rtt) {
+        switch (this) {
+            case RENO:
+                return new RenoController(rtt);
+            case BBR:
+                return new BbrController();
+            default:
+                return new CubicController(rtt);
+        }
+    }
+
+    /**
+     * @param name name of the algorithm, in any case
+     * @return CongestionAlgorithm, or null if there is none with that name
+     */
+    public static CongestionAlgorithm fromName(String name) {
+        for (CongestionAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name))
+                return algorithm;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package UDP;
+
+/**
+ * CongestionController decides how many packets a SelectiveRepeatSender may keep in flight (cwnd) and,
+ * for rate based algorithms, how fast it may send them (pacing rate). The sender reports every ACK and
+ * every loss to it. One controller belongs to one connection, next to its RttEstimator.
+ * Windows are counted in packets and rates in packets per millisecond.
+ */
+public interface CongestionController {
+
+    int MIN_CWND = 2;
+    int INITIAL_CWND = 10;
+    int MAX_CWND = SelectiveRepeatReceiver.DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Called for every packet acknowledged for the first time
+     * @param now current time in milliseconds
+     * @param rtt round trip time of the packet in milliseconds, or -1 if it was retransmitted
+     * @param delivery_rate packets per millisecond delivered while the packet was in flight, or -1 if unknown
+     * @param in_flight packets still in flight after this ACK
+     */
+    void onAck(long now, long rtt, double delivery_rate, int in_flight);
+
+    /**
+     * Called when a packet is found lost the first time, the window is reduced at most once per round trip
+     * @param now current time in milliseconds
+     */
+    void onLoss(long now);
+
+    /**
+     * Called when a retransmitted packet is lost again, the path is considered congested
+     * @param now current time in milliseconds
+     */
+    void onTimeout(long now);
+
+    /**
+     * @return the congestion window in packets
+     */
+    int getCwnd();
+
+    /**
+     * @return packets per millisecond the sender may send at, 0 when the sender is only limited by cwnd
+     */
+    double getPacingRate();
+
+    /**
+     * @return name of the algorithm
+     */
+    String getName();
+}
@@ -0,0 +1,13 @@
+package UDP;
+
+/**
+ * States of a ServerConnection, from the client SYN until the last response FIN is acknowledged.
+ */
+public enum ConnectionState {
+    SYN_RCVD,           // SYN received, SYN_ACK sent and waiting for the ACK
+    ESTABLISHED,        // handshake done or every response delivered, waiting for the next request
+    RECEIVING_BODY,     // request packets arriving until the request FIN
+    SENDING,            // response packets in flight, pipelined requests may still arrive
+    FIN_WAIT,           // every response packet acknowledged except the FIN
+    CLOSED
+}
@@ -0,0 +1,68 @@
+package UDP;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * ConnectionThreads starts the thread a connection is served on. On Java 21 and later it is a virtual thread,
+ * mounted on a carrier thread only while it runs and unmounted while it blocks on its mailbox, so a thread per
+ * connection stays cheap with thousands of connections. Thread.startVirtualThread is looked up when the class is
+ * loaded, as the server is also built for Java 8; without it a daemon platform thread is started instead. On Java
+ * 19 and 20 the method exists but throws unless preview features are enabled, the threads then fall back to
+ * platform threads for good.
+ */
+public class ConnectionThreads {
+
+    private static final MethodHandle START_VIRTUAL_THREAD = findStartVirtualThread();
+    private static volatile boolean virtual = START_VIRTUAL_THREAD != null;
+
+    /**
+     * Starts a thread
+     * @param task Runnable object the thread runs
+     * @param name name of the thread
+     * @return the thread started
+     */
+    public Thread start(Runnable task, String name) {
+        if (virtual) {
+            try {
+                Thread thread = (Thread) START_VIRTUAL_THREAD.invoke(task);
+                thread.setName(name);
+                return thread;
+            } catch (UnsupportedOperationException e) {
+                virtual = false;
+                System.out.println("Virtual threads are a preview feature of this Java, connections run on platform threads");
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @return true if the threads started are virtual threads
+     */
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public String toString() {
+        return isVirtual() ? "virtual thread" : "platform thread";
+    }
+
+    private static MethodHandle findStartVirtualThread() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "startVirtualThread",
+                    MethodType.methodType(Thread.class, Runnable.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            System.out.println("Virtual threads need Java 21, connections run on platform threads");
+            return null;
+        }
+    }
+}
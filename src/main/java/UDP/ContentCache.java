@@ -0,0 +1,317 @@
+package UDP;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * ContentCache keeps the contents of the files served most often in memory, up to a budget in bytes, with the
+ * W-TinyLFU policy. New files enter a small LRU window, WINDOW_PERCENT of the budget, so a burst of requests for a
+ * new file is served from memory. The file the window evicts is admitted to the main space only if the
+ * FrequencySketch saw it more often than the file the main space would evict for it, so a scan of files read once
+ * cannot push the popular ones out. The main space is a segmented LRU: a file hit again while on probation moves
+ * to the protected segment, PROTECTED_PERCENT of the main space, and the files the protected segment overflows go
+ * back to probation.
+ * Files are keyed by their normalized absolute path and their contents are checked against the size and modification
+ * time of the file on every read, so a file changed on disk is read again. The contents are held in heap buffers or,
+ * off heap, in direct buffers. A file is read from disk without holding the lock of the cache, so several threads
+ * can use it at the same time.
+ */
+public class ContentCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    public static final int WINDOW_PERCENT = 1;
+    public static final int PROTECTED_PERCENT = 80;
+    public static final int AVERAGE_FILE_SIZE = 16 << 10;
+
+    private enum Region { WINDOW, PROBATION, PROTECTED }
+
+    private static class Entry {
+        final Path file;
+        final ByteBuffer content;
+        final long size;
+        final FileTime modified;
+        Region region = Region.WINDOW;
+
+        Entry(Path file, ByteBuffer content, BasicFileAttributes attributes) {
+            this.file = file;
+            this.content = content;
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime();
+        }
+
+        boolean isCurrent(BasicFileAttributes attributes) {
+            return size == attributes.size() && modified.equals(attributes.lastModifiedTime());
+        }
+    }
+
+    private final long max_bytes;
+    private final long window_max;
+    private final long protected_max;
+    private final boolean off_heap;
+    private final FrequencySketch sketch;
+    // Insertion order is LRU order, an entry used is moved to the end
+    private final LinkedHashMap<Path, Entry> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Path, Entry> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Path, Entry> protect = new LinkedHashMap<>();
+    private long window_bytes = 0;
+    private long probation_bytes = 0;
+    private long protected_bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long rejections = 0;
+    private long invalidations = 0;
+
+    /**
+     * Constructor for the ContentCache class.
+     * @param max_bytes budget of the file contents in bytes, 0 to cache nothing
+     * @param off_heap true to hold the contents in direct buffers, outside the Java heap
+     */
+    public ContentCache(long max_bytes, boolean off_heap) {
+        this.max_bytes = Math.max(0, max_bytes);
+        this.window_max = this.max_bytes * WINDOW_PERCENT / 100;
+        this.protected_max = (this.max_bytes - window_max) * PROTECTED_PERCENT / 100;
+        this.off_heap = off_heap;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1, this.max_bytes / AVERAGE_FILE_SIZE)));
+    }
+
+    /**
+     * Gives the contents of a file from the cache, or reads the file and offers it to the cache
+     * @param file regular file
+     * @return a read-only buffer of the contents, or null if the file is larger than the cache could ever hold,
+     * it is then read from disk as it is sent
+     */
+    public ByteBuffer read(Path file) throws IOException {
+        return read(file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    /**
+     * Gives the contents of a file from the cache, checked against attributes the caller just read from the file
+     * system, or reads the file and offers it to the cache. Attributes from the MetadataCache would not do, they lag
+     * behind a file rewritten outside the server until its event is processed
+     * @param file regular file
+     * @param attributes current size and modification time of the file
+     * @return a read-only buffer of the contents, or null if the file is larger than the cache could ever hold
+     */
+    public ByteBuffer read(Path file, BasicFileAttributes attributes) throws IOException {
+        if (max_bytes == 0)
+            return null;
+        if (attributes == null)
+            throw new NoSuchFileException(file.toString());
+
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (this) {
+            sketch.increment(key);
+
+            Entry entry = find(key);
+            if (entry != null && entry.isCurrent(attributes)) {
+                hits++;
+                onHit(entry);
+                return entry.content.duplicate();
+            }
+            if (entry != null) {
+                invalidations++;
+                remove(entry);
+            }
+            misses++;
+
+            if (attributes.size() > max_bytes - window_max || attributes.size() > Integer.MAX_VALUE)
+                return null;
+        }
+
+        // Read without the lock, the other threads keep getting their hits meanwhile
+        ByteBuffer content = load(key, attributes.size());
+        // Changed while it was read, it is served but not kept
+        if (!Files.readAttributes(key, BasicFileAttributes.class).lastModifiedTime().equals(attributes.lastModifiedTime()))
+            return content;
+
+        synchronized (this) {
+            // Another thread may have read it too
+            Entry entry = find(key);
+            if (entry != null)
+                remove(entry);
+            insert(new Entry(key, content, attributes));
+        }
+        return content.duplicate();
+    }
+
+    /**
+     * Drops the contents of a file, after the server wrote it
+     * @param file file written
+     */
+    public synchronized void invalidate(Path file) {
+        Entry entry = find(file.toAbsolutePath().normalize());
+        if (entry != null) {
+            invalidations++;
+            remove(entry);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return files read but not admitted, as less popular than the file they would have replaced
+     */
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return bytes of file contents held
+     */
+    public synchronized long getSize() {
+        return window_bytes + probation_bytes + protected_bytes;
+    }
+
+    public long getMaxSize() {
+        return max_bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " rejections=" + rejections
+                + " invalidations=" + invalidations + " files=" + (window.size() + probation.size() + protect.size())
+                + " bytes=" + getSize() + "/" + max_bytes;
+    }
+
+    private ByteBuffer load(Path file, long size) throws IOException {
+        ByteBuffer content = off_heap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // reads until the buffer is full or the file ends
+            }
+        }
+        content.flip();
+        return content.asReadOnlyBuffer();
+    }
+
+    private Entry find(Path key) {
+        Entry entry = window.get(key);
+        if (entry == null)
+            entry = probation.get(key);
+        if (entry == null)
+            entry = protect.get(key);
+        return entry;
+    }
+
+    /**
+     * Moves an entry hit to the most recent end of its segment, or from probation to the protected segment
+     */
+    private void onHit(Entry entry) {
+        switch (entry.region) {
+            case WINDOW:
+                window.remove(entry.file);
+                window.put(entry.file, entry);
+                break;
+            case PROBATION:
+                probation.remove(entry.file);
+                probation_bytes -= entry.size;
+                entry.region = Region.PROTECTED;
+                protect.put(entry.file, entry);
+                protected_bytes += entry.size;
+                // The least recent protected entries go back to probation
+                Iterator<Entry> it = protect.values().iterator();
+                while (protected_bytes > protected_max && it.hasNext()) {
+                    Entry demoted = it.next();
+                    if (demoted == entry)
+                        break;
+                    it.remove();
+                    protected_bytes -= demoted.size;
+                    demoted.region = Region.PROBATION;
+                    probation.put(demoted.file, demoted);
+                    probation_bytes += demoted.size;
+                }
+                break;
+            case PROTECTED:
+                protect.remove(entry.file);
+                protect.put(entry.file, entry);
+                break;
+        }
+    }
+
+    /**
+     * Adds an entry to the window, and gives the entries the window overflows to the main space
+     */
+    private void insert(Entry entry) {
+        window.put(entry.file, entry);
+        window_bytes += entry.size;
+
+        Iterator<Entry> it = window.values().iterator();
+        while (window_bytes > window_max && it.hasNext()) {
+            Entry candidate = it.next();
+            it.remove();
+            window_bytes -= candidate.size;
+            admit(candidate);
+        }
+    }
+
+    /**
+     * TinyLFU admission of an entry evicted from the window: it replaces the least recent entries of the main space
+     * only if it is more frequent than each of them, otherwise it is dropped
+     */
+    private void admit(Entry candidate) {
+        long needed = probation_bytes + protected_bytes + candidate.size - (max_bytes - window_max);
+        int frequency = sketch.frequency(candidate.file);
+        List<Entry> victims = new ArrayList<>();
+        Iterator<Entry> it = probation.values().iterator();
+        Iterator<Entry> protected_it = protect.values().iterator();
+        while (needed > 0) {
+            Entry victim = it.hasNext() ? it.next() : protected_it.next();
+            if (sketch.frequency(victim.file) >= frequency) {
+                rejections++;
+                return;
+            }
+            victims.add(victim);
+            needed -= victim.size;
+        }
+        for (Entry victim : victims) {
+            remove(victim);
+            evictions++;
+        }
+        candidate.region = Region.PROBATION;
+        probation.put(candidate.file, candidate);
+        probation_bytes += candidate.size;
+    }
+
+    private void remove(Entry entry) {
+        switch (entry.region) {
+            case WINDOW:
+                window.remove(entry.file);
+                window_bytes -= entry.size;
+                break;
+            case PROBATION:
+                probation.remove(entry.file);
+                probation_bytes -= entry.size;
+                break;
+            case PROTECTED:
+                protect.remove(entry.file);
+                protected_bytes -= entry.size;
+                break;
+        }
+    }
+}
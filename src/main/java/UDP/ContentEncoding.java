@@ -0,0 +1,164 @@
+package UDP;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ContentEncoding compresses and decompresses HTTP bodies with the gzip and deflate codings of Accept-Encoding and
+ * Content-Encoding. JSON, HTML and text shrink several times, so a compressed response takes that many fewer
+ * packets. Bodies shorter than MIN_LENGTH are left alone, as are bodies that do not get smaller.
+ * Files larger than MAX_ENCODED_LENGTH are not compressed on the fly, since that would hold them in memory, the
+ * httpfsLibrary streams them as they are unless they have a gzip copy next to them. A request body that decompresses to
+ * more than MAX_DECODED_LENGTH bytes is refused.
+ */
+public class ContentEncoding {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String ACCEPTED = GZIP + ", " + DEFLATE;
+    public static final int MIN_LENGTH = 256;
+    public static final int MAX_ENCODED_LENGTH = 1 << 20;
+    public static final int MAX_DECODED_LENGTH = 16 << 20;
+
+    /**
+     * Thrown when a body decompresses to more bytes than allowed
+     */
+    public static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public TooLargeException(long max_length) {
+            super("The body decompresses to more than " + max_length + " bytes");
+        }
+    }
+
+    private static final Pattern CODING = Pattern.compile("\\s*([A-Za-z0-9*-]+)\\s*(?:;\\s*q\\s*=\\s*([0-9.]+))?\\s*");
+
+    /**
+     * Picks the coding of a response from the Accept-Encoding header of the request, gzip first
+     * @param accept_encoding value of the Accept-Encoding header, or null if there is none
+     * @return GZIP, DEFLATE, or null for no coding
+     */
+    public static String negotiate(String accept_encoding) {
+        if (accept_encoding == null)
+            return null;
+
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String item : accept_encoding.split(",")) {
+            Matcher m = CODING.matcher(item);
+            if (!m.matches())
+                continue;
+            boolean accepted = m.group(2) == null || !m.group(2).matches("0*\\.?0*");
+            String coding = m.group(1).toLowerCase();
+            if (coding.equals(GZIP) || coding.equals("*"))
+                gzip |= accepted;
+            else if (coding.equals(DEFLATE))
+                deflate |= accepted;
+        }
+        return gzip ? GZIP : deflate ? DEFLATE : null;
+    }
+
+    /**
+     * Compresses a body
+     * @param body bytes of the body
+     * @param coding GZIP or DEFLATE
+     * @return the compressed body
+     */
+    public static byte[] encode(byte[] body, String coding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream zip = GZIP.equals(coding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+            zip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses a body
+     * @param body bytes of the compressed body
+     * @param coding GZIP or DEFLATE, any other coding returns the body as it is
+     * @return the decompressed body
+     */
+    public static byte[] decode(byte[] body, String coding) throws IOException {
+        return decode(body, coding, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Decompresses a body, stopping as soon as it passes max_length bytes, so a small body crafted to expand
+     * enormously cannot fill the memory
+     * @param body bytes of the compressed body
+     * @param coding GZIP or DEFLATE, any other coding returns the body as it is
+     * @param max_length largest number of bytes of the decompressed body
+     * @return the decompressed body
+     * @throws TooLargeException if the body decompresses to more than max_length bytes
+     */
+    public static byte[] decode(byte[] body, String coding, int max_length) throws IOException {
+        if (coding == null)
+            return body;
+
+        InputStream in = new ByteArrayInputStream(body);
+        coding = coding.trim().toLowerCase();
+        if (coding.equals(GZIP))
+            in = new GZIPInputStream(in);
+        else if (coding.equals(DEFLATE))
+            in = new InflaterInputStream(in);
+        else
+            return body;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(body.length * 4L, max_length));
+        byte[] chunk = new byte[8192];
+        try (InputStream zip = in) {
+            int n;
+            while ((n = zip.read(chunk)) > 0) {
+                if (n > max_length - out.size())
+                    throw new TooLargeException(max_length);
+                out.write(chunk, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the body of a response if it is worth it
+     * @param body bytes of the body
+     * @param coding coding negotiated with the client, or null
+     * @return the encoded body, or null if the body is sent as it is
+     */
+    public static byte[] encodeBody(byte[] body, String coding) throws IOException {
+        if (coding == null || body.length < MIN_LENGTH)
+            return null;
+
+        byte[] encoded = encode(body, coding);
+        return encoded.length < body.length ? encoded : null;
+    }
+
+    /**
+     * @param message bytes of an HTTP message
+     * @return index of the first byte of the body, or -1 if the headers are not complete
+     */
+    public static int bodyOffset(byte[] message) {
+        for (int i = 3; i < message.length; i++) {
+            if (message[i] == '\n' && message[i - 1] == '\r' && message[i - 2] == '\n' && message[i - 3] == '\r')
+                return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @param headers headers of an HTTP message
+     * @param name name of a header
+     * @return value of the header, or null if it is absent
+     */
+    public static String header(String headers, String name) {
+        Matcher m = Pattern.compile("(?im)^" + Pattern.quote(name) + ":[ \\t]*(.*?)[ \\t]*\r?$").matcher(headers);
+        return m.find() ? m.group(1) : null;
+    }
+}
@@ -0,0 +1,83 @@
+package UDP;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+
+/**
+ * CookieJar keeps the fast open cookies a client received, one per server, in a file of the user home directory
+ * so the next httpc invocation can send its request in the SYN.
+ */
+public class CookieJar {
+
+    public static final String DEFAULT_FILE = ".httpc_cookies";
+
+    private final File file;
+    private final Properties cookies = new Properties();
+
+    /**
+     * Constructor for the CookieJar class, loads the cookies saved in the file if it exists
+     * @param file File object where the cookies are saved
+     */
+    public CookieJar(File file) {
+        this.file = file;
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                cookies.load(in);
+            } catch (IOException e) {
+                System.out.println("Could not read the cookies of " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return CookieJar object of the file in the user home directory
+     */
+    public static CookieJar load() {
+        return new CookieJar(new File(System.getProperty("user.home"), DEFAULT_FILE));
+    }
+
+    /**
+     * @param server address of the server
+     * @return the cookie of the server, or null if there is none or it is not valid hex
+     */
+    public byte[] get(InetSocketAddress server) {
+        String hex = cookies.getProperty(key(server));
+        if (hex == null || hex.length() % 2 != 0)
+            return null;
+
+        byte[] cookie = new byte[hex.length() / 2];
+        try {
+            for (int i = 0; i < cookie.length; i++) {
+                int value = Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+                cookie[i] = (byte) value;
+            }
+        } catch (NumberFormatException e) {
+            // A corrupt entry is treated as missing, the server gives a new cookie
+            return null;
+        }
+        return cookie;
+    }
+
+    /**
+     * Saves the cookie of a server, replacing the previous one
+     * @param server address of the server
+     * @param cookie cookie received in a SYN_ACK
+     */
+    public void put(InetSocketAddress server, byte[] cookie) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : cookie)
+            hex.append(String.format("%02x", b));
+        cookies.setProperty(key(server), hex.toString());
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            cookies.store(out, "httpc fast open cookies");
+        } catch (IOException e) {
+            System.out.println("Could not save the cookies to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(InetSocketAddress server) {
+        return server.getAddress().getHostAddress() + ":" + server.getPort();
+    }
+}
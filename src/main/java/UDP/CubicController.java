@@ -0,0 +1,122 @@
+package UDP;
+
+/**
+ * CubicController is the CUBIC algorithm of RFC 8312. After a loss cwnd follows the cubic function
+ * W(t) = C * (t - K)^3 + W_max of the time since the reduction, so it comes back quickly to the window where
+ * the loss happened, stays there and then probes beyond it. It never grows slower than Reno would
+ * (the TCP friendly window). It is ACK clocked and does not pace.
+ */
+public class CubicController implements CongestionController {
+
+    private static final double C = 0.4;
+    private static final double BETA = 0.7;
+
+    private final RttEstimator rtt;
+    private double cwnd = INITIAL_CWND;
+    private double ssthresh = MAX_CWND;
+    private double w_max;
+    private double w_last_max;
+    private double w_est;
+    private double origin;
+    private double k;
+    private long epoch_start = -1;
+    private long recovery_start = -1;
+
+    /**
+     * Constructor for the CubicController class.
+     * @param rtt RttEstimator of the connection, a round trip is its SRTT
+     */
+    public CubicController(RttEstimator rtt) {
+        this.rtt = rtt;
+    }
+
+    @Override
+    public void onAck(long now, long rtt_sample, double delivery_rate, int in_flight) {
+        // A window the sender does not fill says nothing about the path
+        if (in_flight + 1 < cwnd / 2)
+            return;
+
+        if (cwnd < ssthresh) {
+            cwnd = Math.min(cwnd + 1, MAX_CWND);
+            return;
+        }
+
+        if (epoch_start < 0) {
+            epoch_start = now;
+            if (cwnd < w_max) {
+                k = Math.cbrt((w_max - cwnd) / C);
+                origin = w_max;
+            }
+            else {
+                k = 0;
+                origin = cwnd;
+            }
+            w_est = cwnd;
+        }
+
+        // The target is where the cubic function will be one round trip from now, t is in seconds
+        double t = (now - epoch_start + Math.max(0, rtt.getSrtt())) / 1000.0;
+        double target = origin + C * Math.pow(t - k, 3);
+        if (target > cwnd)
+            cwnd += (target - cwnd) / cwnd;
+        else
+            cwnd += 0.01 / cwnd;
+
+        w_est += 3 * (1 - BETA) / (1 + BETA) / cwnd;
+        cwnd = Math.min(Math.max(cwnd, w_est), MAX_CWND);
+    }
+
+    @Override
+    public void onLoss(long now) {
+        if (recovery_start >= 0 && now - recovery_start < Math.max(1, rtt.getSrtt()))
+            return;
+
+        recovery_start = now;
+        reduce();
+        cwnd = ssthresh;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        recovery_start = now;
+        reduce();
+        cwnd = 1;
+    }
+
+    @Override
+    public int getCwnd() {
+        return (int) cwnd;
+    }
+
+    @Override
+    public double getPacingRate() {
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return "cubic";
+    }
+
+    /**
+     * Remembers the window of the loss and starts a new cubic epoch.
+     * With fast convergence a flow that lost below its previous W_max gives up some bandwidth to newer flows
+     */
+    private void reduce() {
+        epoch_start = -1;
+        if (cwnd < w_last_max) {
+            w_last_max = cwnd;
+            w_max = cwnd * (1 + BETA) / 2;
+        }
+        else {
+            w_last_max = cwnd;
+            w_max = cwnd;
+        }
+        ssthresh = Math.max(cwnd * BETA, MIN_CWND);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cwnd=%d ssthresh=%d w_max=%d", getName(), getCwnd(), (int) ssthresh, (int) w_max);
+    }
+}
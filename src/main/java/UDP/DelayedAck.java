@@ -0,0 +1,84 @@
+package UDP;
+
+import java.io.IOException;
+
+/**
+ * DelayedAck decides when the packets given to a SelectiveRepeatReceiver are acknowledged. Packets that arrive
+ * in order are acknowledged together, by one cumulative ACK every ack_every packets or ack_delay milliseconds
+ * after the first unacknowledged one, whichever comes first. A packet out of order, a duplicate, a packet that
+ * fills a gap and the FIN are acknowledged at once, so the sender can detect losses and finish quickly.
+ */
+public class DelayedAck {
+
+    public static final int ACK_EVERY = 2;
+    public static final long ACK_DELAY = 5;
+
+    /**
+     * Sends the ACK of a packet, with the cumulative ACK and SACK blocks of the receiver
+     */
+    public interface Sender {
+        void send(long seq_no) throws IOException;
+    }
+
+    private final EventLoop loop;
+    private final SelectiveRepeatReceiver receiver;
+    private final int ack_every;
+    private final long ack_delay;
+    private final Sender sender;
+    private TimerWheel.Timer timer;
+    private int pending = 0;
+    private long last_seq;
+
+    /**
+     * Constructor for the DelayedAck class.
+     * @param loop EventLoop object of the channel, that runs the delay timer
+     * @param receiver SelectiveRepeatReceiver the packets go into
+     * @param ack_every number of in order packets acknowledged by one ACK
+     * @param ack_delay longest time in milliseconds an in order packet waits for its ACK
+     * @param sender sends an ACK
+     */
+    public DelayedAck(EventLoop loop, SelectiveRepeatReceiver receiver, int ack_every, long ack_delay, Sender sender) {
+        this.loop = loop;
+        this.receiver = receiver;
+        this.ack_every = Math.max(1, ack_every);
+        this.ack_delay = ack_delay;
+        this.sender = sender;
+    }
+
+    /**
+     * Gives a packet to the receiver and acknowledges it now or later
+     * @param packet DATA or FIN Packet received from the peer
+     */
+    public void receive(Packet packet) throws IOException {
+        long expected = receiver.getNextSequenceNumber();
+        boolean had_gap = receiver.hasGap();
+        if (!receiver.receive(packet))
+            return;
+
+        last_seq = packet.getSequenceNumber();
+        boolean in_order = last_seq == expected && !had_gap && packet.getType() != PacketType.FIN.getValue();
+        if (!in_order || ++pending >= ack_every) {
+            flush();
+        }
+        else if (timer == null) {
+            timer = loop.schedule(ack_delay, now -> flush());
+        }
+    }
+
+    /**
+     * Acknowledges now every packet received so far
+     */
+    public void flush() throws IOException {
+        cancel();
+        pending = 0;
+        sender.send(last_seq);
+    }
+
+    /**
+     * Stops the delay timer without sending the pending ACK
+     */
+    public void cancel() {
+        loop.cancel(timer);
+        timer = null;
+    }
+}
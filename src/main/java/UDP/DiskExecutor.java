@@ -0,0 +1,202 @@
+package UDP;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * DiskExecutor runs the work that touches the file system, producing the response of a request for instance, on a
+ * fixed number of worker threads, so the thread of the EventLoop keeps reading and sending packets while files
+ * are read and written. Jobs are queued on a lock-free queue of at most capacity jobs, a worker with nothing to do
+ * parks until a job is queued, and the result of each job is handed back to the EventLoop it came from, where its
+ * Completion runs. Each worker has a context of its own, made by the factory given, so jobs need no locking for it.
+ * The depth of the queue, its largest depth and the share of the time the workers were busy are measured.
+ * @param <C> type of the context of a worker
+ */
+public class DiskExecutor<C> implements AutoCloseable {
+
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Work run on a worker
+     * @param <C> type of the context of a worker
+     * @param <T> type of the result
+     */
+    public interface Job<C, T> {
+        T run(C context) throws IOException;
+    }
+
+    /**
+     * Receives the result of a Job, on the thread of the EventLoop
+     * @param <T> type of the result
+     */
+    public interface Completion<T> {
+        /**
+         * @param result result of the job, null if it failed
+         * @param error exception the job threw, or null
+         */
+        void complete(T result, IOException error) throws IOException;
+    }
+
+    private class Worker implements Runnable {
+        final AtomicBoolean parked = new AtomicBoolean(false);
+        final Thread thread;
+        final C context;
+
+        Worker(int index, C context) {
+            this.context = context;
+            this.thread = new Thread(this, "disk-io-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Consumer<C> job = jobs.poll();
+                if (job == null) {
+                    parked.set(true);
+                    idle.offer(this);
+                    // A job queued before this worker was seen idle is taken now
+                    job = jobs.poll();
+                    if (job == null) {
+                        while (parked.get() && running)
+                            LockSupport.park(this);
+                        continue;
+                    }
+                    parked.set(false);
+                }
+                depth.decrementAndGet();
+                long start = System.nanoTime();
+                job.accept(context);
+                busy_nanos.addAndGet(System.nanoTime() - start);
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Consumer<C>> jobs = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<>();
+    private final List<Worker> workers = new ArrayList<>();
+    private final int capacity;
+    private final long started = System.nanoTime();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger max_depth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong busy_nanos = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for the DiskExecutor class. Starts the workers
+     * @param workers number of worker threads
+     * @param capacity largest number of jobs waiting for a worker
+     * @param context_factory makes the context of each worker
+     */
+    public DiskExecutor(int workers, int capacity, Supplier<C> context_factory) {
+        this.capacity = capacity;
+        for (int i = 0; i < Math.max(1, workers); i++)
+            this.workers.add(new Worker(i, context_factory.get()));
+        for (Worker worker : this.workers)
+            worker.thread.start();
+    }
+
+    /**
+     * Queues a job
+     * @param job Job to run on a worker
+     * @param loop EventLoop the completion runs on
+     * @param completion Completion given the result of the job
+     * @return false if the queue is full, the job is then not run
+     */
+    public <T> boolean submit(Job<C, T> job, EventLoop loop, Completion<T> completion) {
+        if (!running || depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        max_depth.accumulateAndGet(depth.get(), Math::max);
+        submitted.incrementAndGet();
+
+        jobs.offer(context -> {
+            T result = null;
+            IOException error = null;
+            try {
+                result = job.run(context);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            T done = result;
+            IOException failure = error;
+            loop.execute(now -> completion.complete(done, failure));
+        });
+
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            if (worker.parked.compareAndSet(true, false)) {
+                LockSupport.unpark(worker.thread);
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of jobs waiting for a worker
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * @return largest number of jobs that waited for a worker at once
+     */
+    public int getMaxQueueDepth() {
+        return max_depth.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return number of jobs refused because the queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return share of the time since the start that the workers spent running jobs, from 0 to 1
+     */
+    public double getUtilization() {
+        long elapsed = (System.nanoTime() - started) * workers.size();
+        return elapsed <= 0 ? 0 : (double) busy_nanos.get() / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "workers=" + workers.size() + " queued=" + getQueueDepth() + " max_queued=" + getMaxQueueDepth()
+                + " submitted=" + submitted.get() + " completed=" + getCompleted() + " rejected=" + getRejected()
+                + String.format(" utilization=%.1f%%", 100 * getUtilization());
+    }
+
+    /**
+     * Stops the workers once their current job is done, the jobs still queued are dropped
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Worker worker : workers)
+            LockSupport.unpark(worker.thread);
+    }
+}
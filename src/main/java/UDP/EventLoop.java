@@ -0,0 +1,350 @@
+package UDP;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.channels.SelectionKey.OP_READ;
+
+/**
+ * EventLoop owns a DatagramChannel for its whole life: one Selector waits for incoming datagrams and the
+ * TimerWheel holds every retransmission, idle and FIN timer of the channel. Each packet read is given to the
+ * PacketHandler and each expired timer runs its task, all on the thread calling run, so the handlers never block.
+ * Other threads hand tasks to the loop with execute, the completions of the DiskExecutor for instance: they are
+ * queued on a lock-free queue, the Selector is woken up and the tasks run on the loop thread.
+ * Datagrams are received into and sent from pooled direct buffers through a reused PacketView.
+ * A loop can also serve a single connection of a channel read by another thread: it only sends on the channel,
+ * the reader gives it the packets of its connection with deliver, and its thread blocks on that mailbox until a
+ * packet or a task arrives or a timer expires, which suits a virtual thread.
+ */
+public class EventLoop implements Closeable {
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final TimerWheel timers;
+    private final BufferPool pool;
+    private final ByteBuffer receiveBuffer;
+    private final ByteBuffer sendBuffer;
+    private final PacketView view = new PacketView();
+    private final ConcurrentLinkedQueue<TimerWheel.Task> tasks = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<TimerWheel.Task> mailbox;
+    private boolean mailbox_closed = false;     // guarded by the mailbox
+    private final List<Packet> undelivered = new ArrayList<>();
+    private PacketHandler handler = packet -> { };
+    private SocketAddress sourceAddress;
+    private boolean running = false;
+
+    /**
+     * Constructor for the EventLoop class. Switches the channel to non-blocking mode
+     * @param channel DatagramChannel object, already bound
+     */
+    public EventLoop(DatagramChannel channel) throws IOException {
+        this.channel = channel;
+        this.selector = Selector.open();
+        this.timers = new TimerWheel(TimerWheel.DEFAULT_TICK, TimerWheel.DEFAULT_WHEEL_SIZE, now());
+        this.pool = new BufferPool(Packet.MAX_JUMBO_LEN, BufferPool.DEFAULT_BUFFERS);
+        this.receiveBuffer = pool.acquire();
+        this.sendBuffer = pool.acquire();
+        this.mailbox = null;
+        channel.configureBlocking(false);
+        channel.register(selector, OP_READ);
+    }
+
+    /**
+     * Constructor of a loop that serves one connection of a channel read by another thread, from a mailbox.
+     * The channel is left as it is, the loop only sends on it
+     * @param channel DatagramChannel object, already bound
+     * @param buffers number of packet buffers kept in its pool
+     */
+    public EventLoop(DatagramChannel channel, int buffers) {
+        this.channel = channel;
+        this.selector = null;
+        this.timers = new TimerWheel(TimerWheel.DEFAULT_TICK, TimerWheel.DEFAULT_WHEEL_SIZE, now());
+        this.pool = new BufferPool(Packet.MAX_JUMBO_LEN, buffers);
+        this.receiveBuffer = null;
+        this.sendBuffer = pool.acquire();
+        this.mailbox = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Sets the handler of the packets read from the channel
+     * @param handler PacketHandler object
+     */
+    public void setHandler(PacketHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Reads packets and runs timers until stop is called
+     */
+    public void run() throws IOException {
+        running = true;
+        if (mailbox != null) {
+            runMailbox();
+            return;
+        }
+        while (running) {
+            long next = timers.nextExpiry();
+            if (!tasks.isEmpty())
+                selector.selectNow();
+            else if (next == Long.MAX_VALUE)
+                selector.select();
+            else
+                selector.select(Math.max(1, next - now()));
+            selector.selectedKeys().clear();
+
+            Packet packet;
+            while (running && (packet = receivePacket()) != null)
+                handler.handle(packet);
+
+            TimerWheel.Task task;
+            while (running && (task = tasks.poll()) != null)
+                task.run(now());
+
+            timers.advance(now());
+        }
+    }
+
+    /**
+     * Runs the packets and tasks of the mailbox and the timers until stop is called, blocking while there is
+     * nothing to do. The mailbox is then closed and the packets left in it kept for getUndelivered, the other
+     * tasks left are run there as they are completions that close files and delete uploads
+     */
+    private void runMailbox() throws IOException {
+        try {
+            while (running) {
+                long next = timers.nextExpiry();
+                TimerWheel.Task task = next == Long.MAX_VALUE ? mailbox.take()
+                        : mailbox.poll(Math.max(1, next - now()), TimeUnit.MILLISECONDS);
+                while (running && task != null) {
+                    task.run(now());
+                    task = mailbox.poll();
+                }
+                timers.advance(now());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (mailbox) {
+                mailbox_closed = true;
+                List<TimerWheel.Task> left = new ArrayList<>(mailbox);
+                mailbox.clear();
+                for (TimerWheel.Task task : left) {
+                    if (task instanceof Delivery)
+                        undelivered.add(((Delivery) task).packet);
+                    else
+                        runLate(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the loop thread, called from any thread. Once a loop serving from a mailbox stopped,
+     * the task is run at once on the calling thread, under the lock of the mailbox so late tasks never overlap
+     * @param task TimerWheel.Task to run as soon as the loop is free
+     */
+    public void execute(TimerWheel.Task task) {
+        if (mailbox != null) {
+            synchronized (mailbox) {
+                if (mailbox_closed)
+                    runLate(task);
+                else
+                    mailbox.offer(task);
+            }
+            return;
+        }
+        tasks.offer(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs a task given to a loop serving from a mailbox after it stopped, called with the mailbox locked
+     * @param task TimerWheel.Task object
+     */
+    private void runLate(TimerWheel.Task task) {
+        try {
+            task.run(now());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Task failed after the connection stopped: " + e);
+        }
+    }
+
+    /**
+     * Gives a packet read by another thread to the PacketHandler of a loop serving from a mailbox
+     * @param packet Packet object received
+     * @return false if the loop stopped, the packet was not taken
+     */
+    public boolean deliver(Packet packet) {
+        synchronized (mailbox) {
+            if (mailbox_closed)
+                return false;
+            mailbox.offer(new Delivery(packet));
+            return true;
+        }
+    }
+
+    /**
+     * @return the packets delivered to a loop serving from a mailbox that were not handled when it stopped
+     */
+    public List<Packet> getUndelivered() {
+        synchronized (mailbox) {
+            return new ArrayList<>(undelivered);
+        }
+    }
+
+    /**
+     * Packet given to the loop by another thread, handled in its turn among the tasks of the mailbox
+     */
+    private class Delivery implements TimerWheel.Task {
+        final Packet packet;
+
+        Delivery(Packet packet) {
+            this.packet = packet;
+        }
+
+        @Override
+        public void run(long now) throws IOException {
+            handler.handle(packet);
+        }
+    }
+
+    /**
+     * Makes run return once the current packet or timer is handled
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Schedules a task on the timer wheel
+     * @param delay milliseconds from now
+     * @param task TimerWheel.Task to run
+     * @return TimerWheel.Timer object to cancel the task
+     */
+    public TimerWheel.Timer schedule(long delay, TimerWheel.Task task) {
+        return timers.schedule(now() + delay, task);
+    }
+
+    /**
+     * Cancels a scheduled task
+     * @param timer TimerWheel.Timer object, may be null
+     */
+    public void cancel(TimerWheel.Timer timer) {
+        timers.cancel(timer);
+    }
+
+    /**
+     * Sends a packet through the router, encoded in a reused direct buffer
+     * @param packet Packet to be sent
+     * @param routerAddress address of the router
+     */
+    public void send(Packet packet, SocketAddress routerAddress) throws IOException {
+        packet.writeTo(sendBuffer);
+        channel.send(sendBuffer, routerAddress);
+    }
+
+    /**
+     * Sends a packet already encoded in a buffer, from index 0 to its limit. The buffer is rewound,
+     * so the same bytes can be sent again for a retransmission
+     * @param encoded ByteBuffer object holding the packet
+     * @param routerAddress address of the router
+     */
+    public void send(ByteBuffer encoded, SocketAddress routerAddress) throws IOException {
+        encoded.position(0);
+        channel.send(encoded, routerAddress);
+        encoded.position(0);
+    }
+
+    /**
+     * Writes a packet straight into the reused direct buffer and sends it, without creating a Packet object
+     * @param type int for the packet type
+     * @param sequenceNumber sequence number of the packet
+     * @param peerAddressBits IPv4 address of the peer as an int
+     * @param peerPort port of the peer
+     * @param streamId stream of the packet
+     * @param payload array holding the payload
+     * @param length length of the payload in the array
+     * @param routerAddress address of the router
+     */
+    public void send(int type, long sequenceNumber, int peerAddressBits, int peerPort, int streamId, byte[] payload,
+                     int length, SocketAddress routerAddress) throws IOException {
+        view.wrap(sendBuffer)
+                .clear()
+                .setType(type)
+                .setSequenceNumber(sequenceNumber)
+                .setPeer(peerAddressBits, peerPort)
+                .setStreamId(streamId)
+                .setPayload(payload, 0, length);
+        channel.send(sendBuffer, routerAddress);
+    }
+
+    /**
+     * Encodes a packet in a pooled direct buffer, for senders that keep it until it is acknowledged
+     * @param packet Packet object
+     * @return ByteBuffer object to give back with release
+     */
+    public ByteBuffer encode(Packet packet) {
+        ByteBuffer buf = pool.acquire();
+        packet.writeTo(buf);
+        return buf;
+    }
+
+    /**
+     * Gives a buffer obtained from encode back to the pool
+     * @param buf ByteBuffer object, may be null
+     */
+    public void release(ByteBuffer buf) {
+        pool.release(buf);
+    }
+
+    /**
+     * @return the time in milliseconds used by every timer of the loop
+     */
+    public long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * @return the address the last packet was received from, normally the router
+     */
+    public SocketAddress getSourceAddress() {
+        return sourceAddress;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (selector != null)
+            selector.close();
+    }
+
+    /**
+     * Receives a Datagram without blocking and parses it
+     * @return Packet object, or null when no datagram is waiting
+     */
+    private Packet receivePacket() throws IOException {
+        for (;;) {
+            receiveBuffer.clear();
+            SocketAddress source = channel.receive(receiveBuffer);
+            if (source == null)
+                return null;
+
+            receiveBuffer.flip();
+            view.wrap(receiveBuffer);
+            if (view.isValid()) {
+                sourceAddress = source;
+                return view.toPacket();
+            }
+            System.out.println("Dropping invalid datagram from " + source);
+        }
+    }
+}
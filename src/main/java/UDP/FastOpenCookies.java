@@ -0,0 +1,55 @@
+package UDP;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * FastOpenCookies issues and checks the fast open cookies of a server. A cookie is a truncated HMAC of the
+ * client address under a key drawn when the server starts, so the server keeps no state per client and a
+ * client can only use a cookie from the address it was issued to. Restarting the server invalidates every cookie,
+ * the clients then fall back to the 3-way handshake and get a new one.
+ */
+public class FastOpenCookies {
+
+    public static final int COOKIE_LEN = 8;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final Mac mac;
+
+    /**
+     * Constructor for the FastOpenCookies class, with a random key
+     */
+    public FastOpenCookies() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            // Every JRE has HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param client address of the client
+     * @return the cookie of that client
+     */
+    public synchronized byte[] issue(InetAddress client) {
+        return Arrays.copyOf(mac.doFinal(client.getAddress()), COOKIE_LEN);
+    }
+
+    /**
+     * @param client address the cookie came from
+     * @param cookie cookie sent by the client
+     * @return true if the server issued that cookie to that address
+     */
+    public boolean verify(InetAddress client, byte[] cookie) {
+        return cookie != null && MessageDigest.isEqual(issue(client), cookie);
+    }
+}
@@ -0,0 +1,83 @@
+package UDP;
+
+/**
+ * FrequencySketch estimates how often each key was seen recently, in a fixed amount of memory, for the admission
+ * of the ContentCache. It is a count-min sketch of DEPTH rows of 4-bit counters: a key increments one counter per
+ * row and its frequency is the smallest of them, so collisions only ever overestimate. Once SAMPLE_FACTOR times
+ * as many increments as counters per row were made, every counter is halved, so that old popularity fades.
+ */
+public class FrequencySketch {
+
+    public static final int DEPTH = 4;
+    public static final int MAX_COUNT = 15;
+    public static final int SAMPLE_FACTOR = 10;
+
+    private static final int[] SEEDS = {0x97cb3127, 0xb4b82e9d, 0x8d4b1e7b, 0xe3b0c442};
+
+    private final byte[][] table;
+    private final int mask;
+    private final int sample_size;
+    private int additions = 0;
+
+    /**
+     * Constructor for the FrequencySketch class.
+     * @param expected_keys number of keys the cache is expected to hold, the width is the next power of two
+     */
+    public FrequencySketch(int expected_keys) {
+        int width = Integer.highestOneBit(Math.max(16, expected_keys - 1)) << 1;
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sample_size = SAMPLE_FACTOR * width;
+    }
+
+    /**
+     * @param key key seen, by its hash code
+     * @return the estimated number of times the key was seen since the counters were last halved, up to MAX_COUNT
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++)
+            frequency = Math.min(frequency, table[row][index(hash, row)]);
+        return frequency;
+    }
+
+    /**
+     * Counts one more occurrence of a key
+     * @param key key seen, by its hash code
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = index(hash, row);
+            if (table[row][i] < MAX_COUNT) {
+                table[row][i]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sample_size)
+            reset();
+    }
+
+    /**
+     * Halves every counter
+     */
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++)
+                row[i] >>= 1;
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+}
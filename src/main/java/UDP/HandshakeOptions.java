@@ -0,0 +1,148 @@
+package UDP;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HandshakeOptions is the payload of SYN and SYN_ACK packets, a list of options in BigEndian:
+ * type (1 byte) | length (2) | value, repeated. Options a peer does not know are ignored, so a client and
+ * a server negotiate a feature by one of them offering it in the SYN and the other confirming it in the SYN_ACK.
+ */
+public class HandshakeOptions {
+
+    /** SYN: the client asks for a fast open cookie */
+    public static final int COOKIE_REQUEST = 1;
+    /** SYN: the cookie the client got before, SYN_ACK: a new cookie for the client */
+    public static final int COOKIE = 2;
+    /** SYN: the whole HTTP request, sent with a cookie */
+    public static final int FAST_OPEN_DATA = 3;
+    /** SYN_ACK: the request in the SYN was accepted and the response follows */
+    public static final int FAST_OPEN_ACCEPTED = 4;
+    /** SYN: the largest payload the client accepts, SYN_ACK: the largest payload both accept */
+    public static final int MAX_PAYLOAD = 5;
+    /** SYN: the client asks for XOR parity with a group size, SYN_ACK: the server agrees */
+    public static final int PARITY = 6;
+
+    private static final int OPTION_HEADER_LEN = 3;
+
+    private final Map<Integer, byte[]> options = new LinkedHashMap<>();
+
+    /**
+     * Adds an option
+     * @param type type of the option
+     * @param value value of the option
+     * @return this object
+     */
+    public HandshakeOptions put(int type, byte[] value) {
+        options.put(type, value);
+        return this;
+    }
+
+    /**
+     * Adds an option without value
+     * @param type type of the option
+     * @return this object
+     */
+    public HandshakeOptions put(int type) {
+        return put(type, new byte[0]);
+    }
+
+    public boolean has(int type) {
+        return options.containsKey(type);
+    }
+
+    /**
+     * @param type type of the option
+     * @return value of the option, or null if it is absent
+     */
+    public byte[] get(int type) {
+        return options.get(type);
+    }
+
+    /**
+     * Adds an option with a 4 bytes value
+     * @param type type of the option
+     * @param value value of the option
+     * @return this object
+     */
+    public HandshakeOptions putInt(int type, int value) {
+        return put(type, ByteBuffer.allocate(4).putInt(value).array());
+    }
+
+    /**
+     * @param type type of the option
+     * @param absent value returned when the option is absent or not 4 bytes long
+     * @return 4 bytes value of the option
+     */
+    public int getInt(int type, int absent) {
+        byte[] value = options.get(type);
+        return value == null || value.length != 4 ? absent : ByteBuffer.wrap(value).getInt();
+    }
+
+    /**
+     * @return number of bytes the options take in a payload
+     */
+    public int length() {
+        int length = 0;
+        for (byte[] value : options.values())
+            length += OPTION_HEADER_LEN + value.length;
+        return length;
+    }
+
+    /**
+     * @return the options as a payload
+     */
+    public byte[] encode() {
+        ByteBuffer buf = ByteBuffer.allocate(length());
+        for (Map.Entry<Integer, byte[]> option : options.entrySet()) {
+            buf.put((byte) (int) option.getKey());
+            buf.putShort((short) option.getValue().length);
+            buf.put(option.getValue());
+        }
+        return buf.array();
+    }
+
+    /**
+     * Reads the options of a SYN or SYN_ACK payload, a truncated option ends the list
+     * @param payload payload of the packet
+     * @return HandshakeOptions object
+     */
+    public static HandshakeOptions parse(byte[] payload) {
+        HandshakeOptions options = new HandshakeOptions();
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        while (buf.remaining() >= OPTION_HEADER_LEN) {
+            int type = Byte.toUnsignedInt(buf.get());
+            int length = Short.toUnsignedInt(buf.getShort());
+            if (length > buf.remaining())
+                break;
+            byte[] value = new byte[length];
+            buf.get(value);
+            options.put(type, value);
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (Map.Entry<Integer, byte[]> option : options.entrySet()) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(name(option.getKey())).append('(').append(option.getValue().length).append(')');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String name(int type) {
+        switch (type) {
+            case COOKIE_REQUEST: return "COOKIE_REQUEST";
+            case COOKIE: return "COOKIE";
+            case FAST_OPEN_DATA: return "FAST_OPEN_DATA";
+            case FAST_OPEN_ACCEPTED: return "FAST_OPEN_ACCEPTED";
+            case MAX_PAYLOAD: return "MAX_PAYLOAD";
+            case PARITY: return "PARITY";
+            default: return String.valueOf(type);
+        }
+    }
+}
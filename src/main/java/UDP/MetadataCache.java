@@ -0,0 +1,294 @@
+package UDP;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MetadataCache answers what the server asks the file system before reading or writing a file (whether it exists,
+ * is a directory or a regular file, can be read or written, its size and modification time) and the listings of
+ * directories, for the files under the root directory, from memory. A WatchService watches every directory an entry
+ * was cached for, and the events it reported are applied before each lookup: a file created, deleted or modified
+ * drops its own entry, the entries below it and the listing of its directory. An overflow of events drops
+ * everything. The server also invalidates what it writes itself, so its own writes are seen at once.
+ * A path whose directory does not exist is not cached, since nothing would report its creation. Both maps keep
+ * their MAX_ENTRIES most recent entries. Without a WatchService every lookup goes to the file system.
+ */
+public class MetadataCache implements Closeable {
+
+    public static final int MAX_ENTRIES = 65536;
+
+    /**
+     * What the file system said about a path when it was cached
+     */
+    public static class Metadata {
+        private final boolean exists;
+        private final boolean readable;
+        private final boolean writable;
+        private final BasicFileAttributes attributes;
+
+        private Metadata(Path path) throws IOException {
+            BasicFileAttributes read = null;
+            try {
+                read = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // a path that does not exist is cached too
+            }
+            this.attributes = read;
+            this.exists = read != null;
+            this.readable = exists && Files.isReadable(path);
+            this.writable = exists && Files.isWritable(path);
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public boolean isDirectory() {
+            return exists && attributes.isDirectory();
+        }
+
+        public boolean isRegularFile() {
+            return exists && attributes.isRegularFile();
+        }
+
+        public boolean isReadable() {
+            return readable;
+        }
+
+        public boolean isWritable() {
+            return writable;
+        }
+
+        /**
+         * @return size and modification time of the path, or null if it does not exist
+         */
+        public BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+
+        public long size() {
+            return exists ? attributes.size() : 0;
+        }
+
+        public FileTime lastModifiedTime() {
+            return exists ? attributes.lastModifiedTime() : null;
+        }
+    }
+
+    private final Path root;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> watched = new HashMap<>();
+    private final Map<Path, WatchKey> watched_dirs = new HashMap<>();
+    // Number of watched directories at or below each directory, the only ones entries can be cached below
+    private final Map<Path, Integer> watched_below = new HashMap<>();
+    private final Map<Path, Metadata> entries = lru();
+    private final Map<Path, List<Path>> listings = lru();
+    private final Map<String, Path> resolved = lru();
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructor for the MetadataCache class.
+     * @param root root directory of the server, only the paths under it are cached
+     */
+    public MetadataCache(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        WatchService service = null;
+        try {
+            service = this.root.getFileSystem().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("No WatchService for " + this.root + ", file metadata is not cached: " + e.getMessage());
+        }
+        this.watcher = service;
+    }
+
+    /**
+     * Resolves the path of a request under the root directory
+     * @param requestPathLine String object containing the request path or file.
+     * @return the normalized path
+     */
+    public synchronized Path resolve(String requestPathLine) {
+        Path path = resolved.get(requestPathLine);
+        if (path == null) {
+            path = Paths.get(root.toString(), Paths.get(requestPathLine).normalize().toString());
+            resolved.put(requestPathLine, path);
+        }
+        return path;
+    }
+
+    /**
+     * @param path path under the root directory
+     * @return the Metadata of the path, from memory when it did not change since it was cached
+     */
+    public synchronized Metadata get(Path path) throws IOException {
+        path = path.toAbsolutePath().normalize();
+        drain();
+        Metadata metadata = entries.get(path);
+        if (metadata != null) {
+            hits++;
+            return metadata;
+        }
+
+        misses++;
+        metadata = new Metadata(path);
+        if (watch(path.getParent()))
+            entries.put(path, metadata);
+        return metadata;
+    }
+
+    /**
+     * @param directory directory under the root directory
+     * @return the paths of the entries of the directory
+     */
+    public synchronized List<Path> list(Path directory) throws IOException {
+        directory = directory.toAbsolutePath().normalize();
+        drain();
+        List<Path> listing = listings.get(directory);
+        if (listing != null) {
+            hits++;
+            return listing;
+        }
+
+        misses++;
+        listing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream)
+                listing.add(file);
+        }
+        listing = Collections.unmodifiableList(listing);
+        if (watch(directory))
+            listings.put(directory, listing);
+        return listing;
+    }
+
+    /**
+     * Drops what is known of a path and of the paths below it, and the listing of its directory. The maps are only
+     * scanned for a directory with watched directories at or below it, a file costs a few lookups
+     * @param path path the server wrote
+     */
+    public synchronized void invalidate(Path path) {
+        path = path.toAbsolutePath().normalize();
+        entries.remove(path);
+        listings.remove(path);
+        if (path.getParent() != null)
+            listings.remove(path.getParent());
+        if (watched_below.containsKey(path)) {
+            removeBelow(entries, path);
+            removeBelow(listings, path);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + " misses=" + misses + " paths=" + entries.size() + " listings=" + listings.size()
+                + " watched=" + watched.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null)
+            watcher.close();
+    }
+
+    /**
+     * Watches a directory under the root directory
+     * @param directory directory whose entries are cached
+     * @return true if the directory is watched, so its entries can be cached
+     */
+    private boolean watch(Path directory) {
+        if (watcher == null || directory == null || !directory.startsWith(root))
+            return false;
+        if (watched_dirs.containsKey(directory))
+            return true;
+
+        try {
+            WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watched.put(key, directory);
+            watched_dirs.put(directory, key);
+            for (Path dir = directory; dir != null && dir.startsWith(root); dir = dir.getParent())
+                watched_below.merge(dir, 1, Integer::sum);
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies the events the WatchService reported since the last lookup
+     */
+    private void drain() {
+        if (watcher == null)
+            return;
+
+        WatchKey key;
+        try {
+            while ((key = watcher.poll()) != null) {
+                Path directory = watched.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        entries.clear();
+                        listings.clear();
+                        continue;
+                    }
+                    invalidate(directory.resolve((Path) event.context()));
+                }
+                if (!key.reset() && directory != null) {
+                    // The directory is gone, or was renamed
+                    invalidate(directory);
+                    watched.remove(key);
+                    watched_dirs.remove(directory);
+                    for (Path dir = directory; dir != null && dir.startsWith(root); dir = dir.getParent())
+                        watched_below.computeIfPresent(dir, (d, count) -> count > 1 ? count - 1 : null);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            entries.clear();
+            listings.clear();
+        }
+    }
+
+    private static <V> void removeBelow(Map<Path, V> map, Path path) {
+        Iterator<Path> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(path))
+                it.remove();
+        }
+    }
+
+    private static <K, V> Map<K, V> lru() {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+}
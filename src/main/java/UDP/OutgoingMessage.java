@@ -0,0 +1,214 @@
+package UDP;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * OutgoingMessage is a message queued on a stream, read in payload sized chunks only when its packets are about to
+ * be sent. It is a head held in memory, the status line and headers of a response for instance, followed by a region
+ * of a file read with positional FileChannel reads, so a file of any size goes out with the memory of a couple of
+ * windows of packets. The rest of the message can also be a buffer, the contents of a file in the ContentCache
+ * for instance. A message held all in memory has neither.
+ * The file of a message is not read by read: readAhead reads the next bytes of it, on a thread that may block on
+ * the disk, and once they are given to supply the thread of the loop reads them without touching the file.
+ */
+public class OutgoingMessage implements Closeable {
+
+    private final byte[] head;
+    private final FileChannel file;
+    private final ByteBuffer body;
+    private final long length;
+    private final long end;
+    private int head_offset = 0;
+    private long position;                  // next byte of the file to read ahead
+    private long unfetched;                 // bytes of the file not asked for yet
+    private long unread;                    // bytes of the file not read by read yet
+    private final ArrayDeque<ByteBuffer> ready = new ArrayDeque<>();
+    private long ready_bytes = 0;
+
+    /**
+     * Constructor for a message held in memory.
+     * @param message bytes of the message
+     */
+    public OutgoingMessage(byte[] message) {
+        this(message, null, 0, 0);
+    }
+
+    /**
+     * Constructor for the OutgoingMessage class.
+     * @param head bytes sent before the file
+     * @param file FileChannel the rest of the message is read from, closed with the message, or null
+     * @param position offset in the file of the first byte sent
+     * @param file_length number of bytes of the file sent
+     */
+    public OutgoingMessage(byte[] head, FileChannel file, long position, long file_length) {
+        this.head = head;
+        this.file = file;
+        this.body = null;
+        this.position = position;
+        this.end = file == null ? position : position + file_length;
+        this.length = head.length + (end - position);
+        this.unfetched = end - position;
+        this.unread = end - position;
+    }
+
+    /**
+     * Constructor for a message whose head and body are held in memory, sent one after the other without being copied
+     * into one array.
+     * @param head bytes sent before the body
+     * @param body bytes of the body
+     */
+    public OutgoingMessage(byte[] head, byte[] body) {
+        this(head, ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Constructor for a message whose body is in a buffer.
+     * @param head bytes sent before the body
+     * @param body ByteBuffer object whose remaining bytes are sent after the head, it is not modified
+     */
+    public OutgoingMessage(byte[] head, ByteBuffer body) {
+        this.head = head;
+        this.file = null;
+        this.body = body.duplicate();
+        this.position = 0;
+        this.end = 0;
+        this.length = head.length + body.remaining();
+    }
+
+    /**
+     * @return total number of bytes of the message
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return true while some bytes were not read yet
+     */
+    public boolean hasRemaining() {
+        return head_offset < head.length || bodyRemaining() > 0;
+    }
+
+    /**
+     * @return true if the rest of the message comes from a file, read ahead before it is read
+     */
+    public boolean isStreamed() {
+        return file != null;
+    }
+
+    /**
+     * @param size chunk size
+     * @return true if the next chunk, size bytes unless the message ends before, can be read without the file
+     */
+    public boolean isReadable(int size) {
+        long remaining = head.length - head_offset + bodyRemaining();
+        long readable = head.length - head_offset + (file != null ? ready_bytes : bodyRemaining());
+        return readable >= Math.min(size, remaining);
+    }
+
+    /**
+     * Reads the next chunk of the message, from the bytes read ahead for a file
+     * @param size largest chunk size
+     * @return the next bytes of the message, size of them unless the message ends before or fewer were read ahead
+     */
+    public byte[] read(int size) {
+        int from_head = Math.min(size, head.length - head_offset);
+        int from_body = (int) Math.min(size - from_head, file != null ? ready_bytes : bodyRemaining());
+        byte[] chunk = new byte[from_head + from_body];
+        System.arraycopy(head, head_offset, chunk, 0, from_head);
+        head_offset += from_head;
+        if (body != null) {
+            body.get(chunk, from_head, from_body);
+            return chunk;
+        }
+
+        int at = from_head;
+        while (at < chunk.length) {
+            ByteBuffer next = ready.peek();
+            int count = Math.min(chunk.length - at, next.remaining());
+            next.get(chunk, at, count);
+            at += count;
+            if (!next.hasRemaining())
+                ready.poll();
+        }
+        ready_bytes -= from_body;
+        unread -= from_body;
+        return chunk;
+    }
+
+    /**
+     * @return number of bytes of the file read ahead and not read yet
+     */
+    public long getReadyBytes() {
+        return ready_bytes;
+    }
+
+    /**
+     * Counts the next bytes of the file as asked for, before they are read ahead
+     * @param count largest number of bytes
+     * @return the number of bytes to read ahead, 0 once the whole file was asked for
+     */
+    public int claim(int count) {
+        int claimed = (int) Math.min(count, unfetched);
+        unfetched -= claimed;
+        return claimed;
+    }
+
+    /**
+     * Gives back bytes claimed and not read ahead, when no worker could take them
+     * @param count number of bytes given by claim
+     */
+    public void unclaim(int count) {
+        unfetched += count;
+    }
+
+    /**
+     * Reads the next bytes of the file with positional reads, on a thread that can wait for the disk. Only one
+     * thread reads ahead at a time
+     * @param count number of bytes given by claim
+     * @return the bytes read
+     */
+    public byte[] readAhead(int count) throws IOException {
+        byte[] bytes = new byte[count];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            int read = file.read(buf, position);
+            if (read < 0)
+                throw new EOFException("File ended " + (end - position) + " bytes early");
+            position += read;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gives the message bytes read ahead, in the order they were claimed
+     * @param bytes bytes returned by readAhead
+     */
+    public void supply(byte[] bytes) {
+        ready.add(ByteBuffer.wrap(bytes));
+        ready_bytes += bytes.length;
+    }
+
+    /**
+     * Ends the message after the bytes read ahead so far, when the file could not be read
+     */
+    public void truncate() {
+        unfetched = 0;
+        unread = ready_bytes;
+    }
+
+    private long bodyRemaining() {
+        return body != null ? body.remaining() : unread;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null)
+            file.close();
+    }
+}
@@ -1,7 +1,6 @@
 package UDP;
 
 import java.io.IOException;
-import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -9,25 +8,39 @@ import java.nio.ByteOrder;
 /**
  * Packet represents a simulated network packet.
  * As we don't have unsigned types in Java, we can achieve this by using a larger type.
+ * It is the convenient immutable form of a packet; PacketView reads and writes the same layout in place.
+ * The stream ID follows the part of the header the router reads, so the router forwards it as payload.
  */
 public class Packet {
 
-    public static final int MIN_LEN = 11;
-    public static final int MAX_LEN = 11 + 1013;
+    public static final int MIN_LEN = 13;
+    /** Largest packet every router forwards, used until a larger size is negotiated and probed */
+    public static final int MAX_LEN = 1024;
+    public static final int MAX_PAYLOAD_LEN = MAX_LEN - MIN_LEN;
+    /** Largest packet a peer accepts, a jumbo frame */
+    public static final int MAX_JUMBO_LEN = 9000;
 
     private final int type;
     private final long sequenceNumber;
     private final InetAddress peerAddress;
     private final int peerPort;
+    private final int streamId;
     private final byte[] payload;
+    private final int peerAddressBits;
 
 
     public Packet(int type, long sequenceNumber, InetAddress peerAddress, int peerPort, byte[] payload) {
+        this(type, sequenceNumber, peerAddress, peerPort, Stream.HANDSHAKE, payload);
+    }
+
+    public Packet(int type, long sequenceNumber, InetAddress peerAddress, int peerPort, int streamId, byte[] payload) {
         this.type = type;
         this.sequenceNumber = sequenceNumber;
         this.peerAddress = peerAddress;
         this.peerPort = peerPort;
+        this.streamId = streamId;
         this.payload = payload;
+        this.peerAddressBits = peerAddress == null ? 0 : PacketView.toBits(peerAddress);
     }
 
     public int getType() {
@@ -46,6 +59,10 @@ public class Packet {
         return peerPort;
     }
 
+    public int getStreamId() {
+        return streamId;
+    }
+
     public byte[] getPayload() {
         return payload;
     }
@@ -60,20 +77,24 @@ public class Packet {
                 .setSequenceNumber(sequenceNumber)
                 .setPeerAddress(peerAddress)
                 .setPortNumber(peerPort)
+                .setStreamId(streamId)
                 .setPayload(payload);
     }
 
     /**
-     * Writes a raw presentation of the packet to byte buffer.
-     * The order of the buffer should be set as BigEndian.
+     * Writes a raw presentation of the packet to byte buffer, from index 0 up to its limit.
+     * The order of the buffer should be set as BigEndian, a pooled direct buffer avoids any allocation.
      */
-    // position?
-    private void write(ByteBuffer buf) {
-        buf.put((byte) type);
-        buf.putInt((int) sequenceNumber);
-        buf.put(peerAddress.getAddress());
-        buf.putShort((short) peerPort);
+    public void writeTo(ByteBuffer buf) {
+        buf.clear();
+        buf.put(PacketView.TYPE_OFFSET, (byte) type);
+        buf.putInt(PacketView.SEQUENCE_OFFSET, (int) sequenceNumber);
+        buf.putInt(PacketView.ADDRESS_OFFSET, peerAddressBits);
+        buf.putShort(PacketView.PORT_OFFSET, (short) peerPort);
+        buf.putShort(PacketView.STREAM_OFFSET, (short) streamId);
+        buf.position(PacketView.PAYLOAD_OFFSET);
         buf.put(payload);
+        buf.flip();
     }
 
     /**
@@ -81,9 +102,8 @@ public class Packet {
      * The returned buffer is flipped and ready for get operations.
      */
     public ByteBuffer toBuffer() {
-        ByteBuffer buf = ByteBuffer.allocate(MAX_LEN).order(ByteOrder.BIG_ENDIAN);
-        write(buf);
-        buf.flip();
+        ByteBuffer buf = ByteBuffer.allocate(MIN_LEN + payload.length).order(ByteOrder.BIG_ENDIAN);
+        writeTo(buf);
         return buf;
     }
 
@@ -101,7 +121,7 @@ public class Packet {
      * fromBuffer creates a packet from the given ByteBuffer in BigEndian.
      */
     public static Packet fromBuffer(ByteBuffer buf) throws IOException {
-        if (buf.limit() < MIN_LEN || buf.limit() > MAX_LEN) {
+        if (buf.limit() < MIN_LEN || buf.limit() > MAX_JUMBO_LEN) {
             throw new IOException("Invalid length");
         }
 
@@ -110,9 +130,9 @@ public class Packet {
         builder.setType(Byte.toUnsignedInt(buf.get()));
         builder.setSequenceNumber(Integer.toUnsignedLong(buf.getInt()));
 
-        byte[] host = new byte[]{buf.get(), buf.get(), buf.get(), buf.get()};
-        builder.setPeerAddress(Inet4Address.getByAddress(host));
+        builder.setPeerAddress(PacketView.toAddress(buf.getInt()));
         builder.setPortNumber(Short.toUnsignedInt(buf.getShort()));
+        builder.setStreamId(Short.toUnsignedInt(buf.getShort()));
 
         byte[] payload = new byte[buf.remaining()];
         buf.get(payload);
@@ -125,15 +145,12 @@ public class Packet {
      * fromBytes creates a packet from the given array of bytes.
      */
     public static Packet fromBytes(byte[] bytes) throws IOException {
-        ByteBuffer buf = ByteBuffer.allocate(MAX_LEN).order(ByteOrder.BIG_ENDIAN);
-        buf.put(bytes);
-        buf.flip();
-        return fromBuffer(buf);
+        return fromBuffer(ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN));
     }
 
     @Override
     public String toString() {
-        return String.format("#%d peer=%s:%d, size=%d", sequenceNumber, peerAddress, peerPort, payload.length);
+        return String.format("#%d stream=%d peer=%s:%d, size=%d", sequenceNumber, streamId, peerAddress, peerPort, payload.length);
     }
 
     public static class Builder {
@@ -141,6 +158,7 @@ public class Packet {
         private long sequenceNumber;
         private InetAddress peerAddress;
         private int portNumber;
+        private int streamId;
         private byte[] payload;
 
         public Builder setType(int type) {
@@ -163,13 +181,18 @@ public class Packet {
             return this;
         }
 
+        public Builder setStreamId(int streamId) {
+            this.streamId = streamId;
+            return this;
+        }
+
         public Builder setPayload(byte[] payload) {
             this.payload = payload;
             return this;
         }
 
         public Packet create() {
-            return new Packet(type, sequenceNumber, peerAddress, portNumber, payload);
+            return new Packet(type, sequenceNumber, peerAddress, portNumber, streamId, payload);
         }
     }
 }
@@ -0,0 +1,15 @@
+package UDP;
+
+import java.io.IOException;
+
+/**
+ * PacketHandler receives the packets read from a channel that the reader does not consume itself.
+ */
+public interface PacketHandler {
+
+    /**
+     * Handles a packet read from the channel
+     * @param packet Packet object received
+     */
+    void handle(Packet packet) throws IOException;
+}
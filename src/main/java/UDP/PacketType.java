@@ -8,7 +8,10 @@ public enum PacketType {
     ACK(1),
     SYN(2),
     SYN_ACK(3),
-    FIN(4);
+    FIN(4),
+    PROBE(5),
+    PROBE_ACK(6),
+    PARITY(7);
 
     private int value;
     private static Map map = new HashMap<>();
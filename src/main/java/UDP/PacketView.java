@@ -0,0 +1,204 @@
+package UDP;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PacketView is a flyweight over the raw bytes of a packet held in a ByteBuffer in BigEndian.
+ * The header fields are read and written in place at absolute offsets, so no Packet, InetAddress or payload
+ * array is created; the same view is reused for every datagram of an EventLoop.
+ * The packet spans from index 0 to the limit of the buffer:
+ * type (1 byte) | sequence number (4) | peer address (4) | peer port (2) | stream ID (2) | payload
+ */
+public final class PacketView {
+
+    public static final int TYPE_OFFSET = 0;
+    public static final int SEQUENCE_OFFSET = 1;
+    public static final int ADDRESS_OFFSET = 5;
+    public static final int PORT_OFFSET = 9;
+    public static final int STREAM_OFFSET = 11;
+    public static final int PAYLOAD_OFFSET = Packet.MIN_LEN;
+
+    private static final int MAX_CACHED_ADDRESSES = 1024;
+    private static final Map<Integer, InetAddress> addresses = new ConcurrentHashMap<>();
+
+    private ByteBuffer buf;
+
+    /**
+     * Points the view at a buffer holding a packet from index 0 to its limit
+     * @param buf ByteBuffer object in BigEndian
+     * @return this view
+     */
+    public PacketView wrap(ByteBuffer buf) {
+        this.buf = buf;
+        return this;
+    }
+
+    /**
+     * @return the buffer the view points at
+     */
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    /**
+     * @return true if the buffer is long enough for a header and not longer than a packet
+     */
+    public boolean isValid() {
+        return buf.limit() >= Packet.MIN_LEN && buf.limit() <= Packet.MAX_JUMBO_LEN;
+    }
+
+    public int getType() {
+        return Byte.toUnsignedInt(buf.get(TYPE_OFFSET));
+    }
+
+    public long getSequenceNumber() {
+        return Integer.toUnsignedLong(buf.getInt(SEQUENCE_OFFSET));
+    }
+
+    /**
+     * @return the IPv4 peer address as an int, without creating an InetAddress
+     */
+    public int getPeerAddressBits() {
+        return buf.getInt(ADDRESS_OFFSET);
+    }
+
+    public int getPeerPort() {
+        return Short.toUnsignedInt(buf.getShort(PORT_OFFSET));
+    }
+
+    public int getStreamId() {
+        return Short.toUnsignedInt(buf.getShort(STREAM_OFFSET));
+    }
+
+    public int getPayloadLength() {
+        return buf.limit() - PAYLOAD_OFFSET;
+    }
+
+    /**
+     * Reads one byte of the payload
+     * @param index index in the payload
+     * @return the byte
+     */
+    public byte getPayloadByte(int index) {
+        return buf.get(PAYLOAD_OFFSET + index);
+    }
+
+    /**
+     * Reads a BigEndian int of the payload
+     * @param index index in the payload
+     * @return the int
+     */
+    public int getPayloadInt(int index) {
+        return buf.getInt(PAYLOAD_OFFSET + index);
+    }
+
+    /**
+     * Copies the payload into an array
+     * @param dst destination array, at least getPayloadLength long
+     */
+    public void copyPayload(byte[] dst) {
+        buf.position(PAYLOAD_OFFSET);
+        buf.get(dst, 0, getPayloadLength());
+        buf.position(0);
+    }
+
+    /**
+     * Clears the buffer to write a new packet in it, the header is written by the setters
+     * @return this view
+     */
+    public PacketView clear() {
+        buf.clear();
+        buf.limit(PAYLOAD_OFFSET);
+        return this;
+    }
+
+    public PacketView setType(int type) {
+        buf.put(TYPE_OFFSET, (byte) type);
+        return this;
+    }
+
+    public PacketView setSequenceNumber(long sequenceNumber) {
+        buf.putInt(SEQUENCE_OFFSET, (int) sequenceNumber);
+        return this;
+    }
+
+    /**
+     * Writes the peer address and port
+     * @param addressBits IPv4 address as an int
+     * @param port peer port
+     * @return this view
+     */
+    public PacketView setPeer(int addressBits, int port) {
+        buf.putInt(ADDRESS_OFFSET, addressBits);
+        buf.putShort(PORT_OFFSET, (short) port);
+        return this;
+    }
+
+    public PacketView setStreamId(int streamId) {
+        buf.putShort(STREAM_OFFSET, (short) streamId);
+        return this;
+    }
+
+    /**
+     * Writes the payload after the header and sets the limit of the buffer to the end of the packet
+     * @param payload array holding the payload
+     * @param offset start of the payload in the array
+     * @param length length of the payload
+     * @return this view
+     */
+    public PacketView setPayload(byte[] payload, int offset, int length) {
+        buf.limit(PAYLOAD_OFFSET + length);
+        buf.position(PAYLOAD_OFFSET);
+        buf.put(payload, offset, length);
+        buf.position(0);
+        return this;
+    }
+
+    /**
+     * Creates a Packet object from the view, the payload is copied and the peer address comes from a cache
+     * @return Packet object
+     */
+    public Packet toPacket() {
+        byte[] payload = new byte[getPayloadLength()];
+        copyPayload(payload);
+        return new Packet(getType(), getSequenceNumber(), toAddress(getPeerAddressBits()), getPeerPort(), getStreamId(),
+                payload);
+    }
+
+    /**
+     * @param address IPv4 address
+     * @return the address as an int in network order
+     */
+    public static int toBits(InetAddress address) {
+        byte[] raw = address.getAddress();
+        return ((raw[0] & 0xff) << 24) | ((raw[1] & 0xff) << 16) | ((raw[2] & 0xff) << 8) | (raw[3] & 0xff);
+    }
+
+    /**
+     * Returns the InetAddress of an IPv4 address, the few peer addresses seen are kept in a cache the threads of
+     * the shards read without locking
+     * @param bits IPv4 address as an int
+     * @return InetAddress object
+     */
+    public static InetAddress toAddress(int bits) {
+        InetAddress address = addresses.get(bits);
+        if (address == null) {
+            if (addresses.size() >= MAX_CACHED_ADDRESSES)
+                addresses.clear();
+            byte[] raw = new byte[]{(byte) (bits >>> 24), (byte) (bits >>> 16), (byte) (bits >>> 8), (byte) bits};
+            try {
+                address = Inet4Address.getByAddress(raw);
+            } catch (UnknownHostException e) {
+                // Never happens for a 4 bytes address
+                throw new IllegalStateException(e);
+            }
+            addresses.put(bits, address);
+        }
+        return address;
+    }
+}
@@ -0,0 +1,124 @@
+package UDP;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * PathMtu finds the largest payload that gets through the router to a peer, up to the size negotiated in the
+ * handshake. A router may drop the packets larger than what it forwards, so it starts from Packet.MAX_PAYLOAD_LEN,
+ * which every router forwards, and sends PROBE packets padded to larger sizes: the negotiated size and its halves.
+ * The peer answers each probe it receives with a PROBE_ACK carrying the probe size as sequence number, and the
+ * largest size acknowledged becomes the payload size of the messages segmented after it. Lost probes are resent
+ * PROBE_RETRIES times, a size that never gets through is given up. Probes are outside the congestion window and
+ * their loss is not taken as congestion, since the usual reason is the size.
+ */
+public class PathMtu {
+
+    public static final int PROBE_RETRIES = 2;
+    public static final int MAX_PAYLOAD_LEN = Packet.MAX_JUMBO_LEN - Packet.MIN_LEN;
+
+    private final EventLoop loop;
+    private final SocketAddress routerAddress;
+    private final InetSocketAddress peer;
+    private final int peer_bits;
+    private final RttEstimator rtt;
+    private final int max_payload;
+    private int payload_size = Packet.MAX_PAYLOAD_LEN;
+    private int retries = 0;
+    private TimerWheel.Timer timer;
+
+    /**
+     * Constructor for the PathMtu class.
+     * @param loop EventLoop object of the channel
+     * @param routerAddress address of the router the packets go through
+     * @param peer address and port of the peer
+     * @param rtt RttEstimator of the connection, that gives the probe timeout
+     * @param max_payload largest payload negotiated with the peer
+     */
+    public PathMtu(EventLoop loop, SocketAddress routerAddress, InetSocketAddress peer, RttEstimator rtt,
+                   int max_payload) {
+        this.loop = loop;
+        this.routerAddress = routerAddress;
+        this.peer = peer;
+        this.peer_bits = PacketView.toBits(peer.getAddress());
+        this.rtt = rtt;
+        this.max_payload = Math.min(max_payload, MAX_PAYLOAD_LEN);
+    }
+
+    /**
+     * Sends the probes of every size larger than the payload size, nothing if the negotiated size is not larger
+     */
+    public void start() throws IOException {
+        sendProbes();
+    }
+
+    /**
+     * Raises the payload size to the size of an acknowledged probe
+     * @param ack PROBE_ACK Packet received from the peer
+     */
+    public void onProbeAck(Packet ack) {
+        long size = ack.getSequenceNumber();
+        if (size <= payload_size || size > max_payload)
+            return;
+
+        payload_size = (int) size;
+        System.out.println("Path to " + peer + " takes payloads of " + payload_size + " bytes");
+        if (payload_size == max_payload)
+            cancel();
+    }
+
+    /**
+     * @return the payload size of the messages segmented now
+     */
+    public int getPayloadSize() {
+        return payload_size;
+    }
+
+    /**
+     * Stops the probe timer
+     */
+    public void cancel() {
+        loop.cancel(timer);
+        timer = null;
+    }
+
+    /**
+     * Answers a probe with a PROBE_ACK carrying its size
+     * @param loop EventLoop object of the channel
+     * @param probe PROBE Packet received from the peer
+     * @param routerAddress address of the router the packets go through
+     */
+    public static void answer(EventLoop loop, Packet probe, SocketAddress routerAddress) throws IOException {
+        loop.send(PacketType.PROBE_ACK.getValue(), probe.getPayload().length, PacketView.toBits(probe.getPeerAddress()),
+                probe.getPeerPort(), Stream.HANDSHAKE, new byte[0], 0, routerAddress);
+    }
+
+    /**
+     * Sends one probe of each size not acknowledged yet, from the negotiated size down by halves
+     */
+    private void sendProbes() throws IOException {
+        boolean sent = false;
+        for (int size = max_payload; size > payload_size; size /= 2) {
+            byte[] padding = new byte[size];
+            loop.send(PacketType.PROBE.getValue(), size, peer_bits, peer.getPort(), Stream.HANDSHAKE, padding, size,
+                    routerAddress);
+            sent = true;
+        }
+        if (sent)
+            timer = loop.schedule(rtt.getRto(), this::onTimer);
+    }
+
+    /**
+     * Probe timer, the sizes still unacknowledged are probed again or given up
+     * @param now current time in milliseconds
+     */
+    private void onTimer(long now) throws IOException {
+        timer = null;
+        if (retries >= PROBE_RETRIES)
+            return;
+
+        retries++;
+        sendProbes();
+    }
+}
@@ -0,0 +1,80 @@
+package UDP;
+
+/**
+ * RenoController is the AIMD algorithm of TCP Reno: cwnd grows by one packet per ACK in slow start and by
+ * one packet per round trip above ssthresh, and is halved on a loss. A timeout collapses it to one packet.
+ * It is ACK clocked and does not pace.
+ */
+public class RenoController implements CongestionController {
+
+    private final RttEstimator rtt;
+    private double cwnd = INITIAL_CWND;
+    private double ssthresh = MAX_CWND;
+    private long recovery_start = -1;
+
+    /**
+     * Constructor for the RenoController class.
+     * @param rtt RttEstimator of the connection, a round trip is its SRTT
+     */
+    public RenoController(RttEstimator rtt) {
+        this.rtt = rtt;
+    }
+
+    @Override
+    public void onAck(long now, long rtt, double delivery_rate, int in_flight) {
+        // A window the sender does not fill says nothing about the path
+        if (in_flight + 1 < cwnd / 2)
+            return;
+
+        if (cwnd < ssthresh)
+            cwnd += 1;
+        else
+            cwnd += 1 / cwnd;
+        cwnd = Math.min(cwnd, MAX_CWND);
+    }
+
+    @Override
+    public void onLoss(long now) {
+        if (inRecovery(now))
+            return;
+
+        recovery_start = now;
+        ssthresh = Math.max(cwnd / 2, MIN_CWND);
+        cwnd = ssthresh;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        recovery_start = now;
+        ssthresh = Math.max(cwnd / 2, MIN_CWND);
+        cwnd = 1;
+    }
+
+    @Override
+    public int getCwnd() {
+        return (int) cwnd;
+    }
+
+    @Override
+    public double getPacingRate() {
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return "reno";
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return true during the round trip that follows a reduction
+     */
+    private boolean inRecovery(long now) {
+        return recovery_start >= 0 && now - recovery_start < Math.max(1, rtt.getSrtt());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cwnd=%d ssthresh=%d", getName(), getCwnd(), (int) ssthresh);
+    }
+}
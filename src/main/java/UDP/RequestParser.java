@@ -0,0 +1,341 @@
+package UDP;
+
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * RequestParser is an incremental parser of HTTP/1.x requests. It is fed the bytes of a request as they arrive, in
+ * chunks of any size, and looks at each byte of the head once: the request line and the headers are recorded as
+ * offsets in its buffer, and a String is only made for what is asked for, the path or the value of a header.
+ * Content-Length counts the bytes of the body, which follows the head and is not scanned. Bytes after the body,
+ * the blank lines httpc sends after it for instance, are not part of the request. Lines may end with CRLF or LF, and
+ * a head longer than MAX_HEAD_LENGTH, a request line without a path or a Content-Length that is not a number make the
+ * request malformed.
+ */
+public class RequestParser {
+
+    public static final int MAX_HEAD_LENGTH = 64 << 10;
+
+    private enum State { REQUEST_LINE, HEADERS, BODY, COMPLETE, ERROR }
+
+    private byte[] buffer;
+    private int length = 0;
+    private int scan = 0;
+    private int line_start = 0;
+    private State state = State.REQUEST_LINE;
+    private int method_start, method_end, uri_start, uri_end;
+    // Name start, name end, value start and value end of each header
+    private int[] headers = new int[64];
+    private int header_count = 0;
+    private int body_offset = -1;
+    private long content_length = -1;
+    private long received = 0;
+
+    /**
+     * Constructor for a request fed as it arrives.
+     */
+    public RequestParser() {
+        this.buffer = new byte[512];
+    }
+
+    private RequestParser(byte[] message) {
+        this.buffer = message;
+        this.length = message.length;
+        this.received = message.length;
+        advance();
+        if (state == State.BODY && received - body_offset >= content_length)
+            state = State.COMPLETE;
+    }
+
+    /**
+     * Parses a request received whole, without copying it
+     * @param message bytes of the HTTP request
+     * @return the RequestParser of the request
+     */
+    public static RequestParser parse(byte[] message) {
+        return new RequestParser(message);
+    }
+
+    /**
+     * Adds bytes to the request. The bytes of the head are parsed, and feeding stops at the end of the head, so
+     * the caller can put the body elsewhere; once the head is complete the bytes fed are all kept as the body.
+     * Once the request is malformed, a head longer than MAX_HEAD_LENGTH included, the bytes fed are taken but not kept
+     * @param data bytes received
+     * @param offset index of the first byte
+     * @param count number of bytes
+     * @return the number of bytes taken, less than count only when the head ends before them
+     */
+    public int feed(byte[] data, int offset, int count) {
+        if (state == State.ERROR)
+            return count;
+        boolean in_head = !isHeadComplete();
+        if (length + count > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(length + count, buffer.length * 2));
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+
+        int taken = count;
+        if (in_head) {
+            advance();
+            // Only the lines parsed are kept of a malformed head
+            if (state == State.ERROR) {
+                length = Math.min(length, line_start);
+                return count;
+            }
+            // The body is left to the caller
+            if (isHeadComplete() && length > body_offset) {
+                taken -= length - body_offset;
+                length = body_offset;
+            }
+        }
+        received += taken;
+        if (state == State.BODY && received - body_offset >= content_length)
+            state = State.COMPLETE;
+        return taken;
+    }
+
+    /**
+     * @return true once the blank line that ends the headers was received
+     */
+    public boolean isHeadComplete() {
+        return body_offset >= 0;
+    }
+
+    /**
+     * @return true once the head and Content-Length bytes of body were received
+     */
+    public boolean isComplete() {
+        return state == State.COMPLETE;
+    }
+
+    /**
+     * @return true if the request is malformed
+     */
+    public boolean isError() {
+        return state == State.ERROR;
+    }
+
+    /**
+     * @return number of bytes of the request line and headers, with the blank line, or -1 if they are not complete
+     */
+    public int getHeadLength() {
+        return body_offset;
+    }
+
+    /**
+     * @param method name of a method, in capitals
+     * @return true if the request has this method
+     */
+    public boolean isMethod(String method) {
+        return isHeadComplete() && equals(method_start, method_end, method, false);
+    }
+
+    /**
+     * @return the method of the request, or null if the head is not complete
+     */
+    public String getMethod() {
+        return isHeadComplete() ? string(method_start, method_end) : null;
+    }
+
+    /**
+     * @return the path of the request, or null if the head is not complete
+     */
+    public String getUri() {
+        return isHeadComplete() ? string(uri_start, uri_end) : null;
+    }
+
+    /**
+     * @param name name of a header, in any case
+     * @return the value of the first header with this name, without the spaces around it, or null
+     */
+    public String header(String name) {
+        int i = find(name);
+        return i < 0 ? null : string(headers[i + 2], headers[i + 3]);
+    }
+
+    /**
+     * @param name name of a header, in any case
+     * @param value value compared without regard to case
+     * @return true if the first header with this name has this value
+     */
+    public boolean hasHeader(String name, String value) {
+        int i = find(name);
+        return i >= 0 && equals(headers[i + 2], headers[i + 3], value, true);
+    }
+
+    /**
+     * @return value of the Content-Length header, or -1 if the request has none
+     */
+    public long getContentLength() {
+        return content_length;
+    }
+
+    /**
+     * @return index of the first byte of the body in the buffer, or -1 if the head is not complete
+     */
+    public int getBodyOffset() {
+        return body_offset;
+    }
+
+    /**
+     * @return number of bytes of the body held, at most Content-Length
+     */
+    public int getBodyLength() {
+        if (!isHeadComplete() || content_length < 0)
+            return 0;
+        return (int) Math.min(content_length, length - body_offset);
+    }
+
+    /**
+     * @return the bytes of the body held, at most Content-Length
+     */
+    public byte[] getBody() {
+        return isHeadComplete() ? Arrays.copyOfRange(buffer, body_offset, body_offset + getBodyLength()) : new byte[0];
+    }
+
+    /**
+     * @return the buffer holding the request, from index 0
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the bytes of the request held: its head, followed by its body unless the caller took it
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, UTF_8);
+    }
+
+    /**
+     * Scans the bytes not scanned yet for the ends of lines, until the head is complete
+     */
+    private void advance() {
+        while (scan < length && (state == State.REQUEST_LINE || state == State.HEADERS)) {
+            if (buffer[scan++] != '\n')
+                continue;
+            int end = scan - 1;
+            if (end > line_start && buffer[end - 1] == '\r')
+                end--;
+            line(line_start, end);
+            line_start = scan;
+        }
+        if ((state == State.REQUEST_LINE || state == State.HEADERS) && scan - method_start > MAX_HEAD_LENGTH)
+            state = State.ERROR;
+    }
+
+    /**
+     * Parses a line of the head
+     * @param start index of the first byte of the line
+     * @param end index after the last byte, without the line ending
+     */
+    private void line(int start, int end) {
+        if (state == State.REQUEST_LINE) {
+            // Blank lines before the request line are ignored
+            if (start == end) {
+                method_start = scan;
+                return;
+            }
+            method_start = start;
+            method_end = indexOf(' ', start, end);
+            uri_start = method_end + 1;
+            uri_end = indexOf(' ', uri_start, end);
+            if (method_end == start || method_end == end || uri_start == end || uri_end == uri_start) {
+                state = State.ERROR;
+                return;
+            }
+            state = State.HEADERS;
+            return;
+        }
+
+        if (start == end) {
+            body_offset = scan;
+            state = content_length > 0 ? State.BODY : State.COMPLETE;
+            return;
+        }
+        int colon = indexOf(':', start, end);
+        // A line that is not a header is ignored
+        if (colon == end)
+            return;
+        int value_start = colon + 1;
+        int value_end = end;
+        while (value_start < value_end && (buffer[value_start] == ' ' || buffer[value_start] == '\t'))
+            value_start++;
+        while (value_end > value_start && (buffer[value_end - 1] == ' ' || buffer[value_end - 1] == '\t'))
+            value_end--;
+
+        if (header_count * 4 == headers.length)
+            headers = Arrays.copyOf(headers, headers.length * 2);
+        headers[header_count * 4] = start;
+        headers[header_count * 4 + 1] = colon;
+        headers[header_count * 4 + 2] = value_start;
+        headers[header_count * 4 + 3] = value_end;
+        header_count++;
+
+        if (equals(start, colon, "Content-Length", true)) {
+            long parsed = parseLength(value_start, value_end);
+            if (parsed < 0 || (content_length >= 0 && parsed != content_length))
+                state = State.ERROR;
+            content_length = parsed;
+        }
+    }
+
+    /**
+     * @return the digits between start and end as a number, or -1 if they are not a number
+     */
+    private long parseLength(int start, int end) {
+        if (start == end || end - start > 18)
+            return -1;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < '0' || buffer[i] > '9')
+                return -1;
+            value = value * 10 + (buffer[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return index of the first header with this name, times 4, or -1
+     */
+    private int find(String name) {
+        for (int i = 0; i < header_count * 4; i += 4) {
+            if (equals(headers[i], headers[i + 1], name, true))
+                return i;
+        }
+        return -1;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == c)
+                return i;
+        }
+        return end;
+    }
+
+    /**
+     * Compares bytes of the buffer to an ASCII String
+     */
+    private boolean equals(int start, int end, String s, boolean ignore_case) {
+        if (end - start != s.length())
+            return false;
+        for (int i = 0; i < s.length(); i++) {
+            char a = (char) (buffer[start + i] & 0xff);
+            char b = s.charAt(i);
+            if (a != b && !(ignore_case && Character.toLowerCase(a) == Character.toLowerCase(b)))
+                return false;
+        }
+        return true;
+    }
+
+    private String string(int start, int end) {
+        return new String(buffer, start, end - start, UTF_8);
+    }
+}
@@ -0,0 +1,313 @@
+package UDP;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * RequestSpool is the Sink of the receiver of a server stream. A POST request with a Content-Length is not held
+ * in memory: once its headers are complete its body is written, as the payloads arrive in order, to a temporary
+ * file next to the target, which the httpfsLibrary renames over the target when the response is produced. Readers
+ * of the target see the old file or the new one, never a part of it. The message delivered for such a request is
+ * only its head, and poll gives its Upload. Any other request, including a POST with a Content-Encoding, is
+ * delivered whole as before.
+ * The temporary file is created, written and closed by jobs of the DiskExecutor, one at a time per Upload and in
+ * order, so the loop never waits for the disk: the payloads that arrive while a job runs are queued and written
+ * by the next one. An Upload is settled once its last job is done, and only then can it be committed.
+ */
+public class RequestSpool implements SelectiveRepeatReceiver.Sink {
+
+    public static final long RETRY_DELAY = 10;
+
+    /**
+     * Body of a POST request written to a temporary file
+     */
+    public static class Upload {
+        private final long length;
+        private final DiskExecutor<httpfsLibrary> disk;
+        private final EventLoop loop;
+        private final ArrayDeque<ByteBuffer> queued = new ArrayDeque<>();
+        private Path file;
+        private FileChannel channel;
+        private long written = 0;
+        private boolean failed = false;
+        private boolean busy = false;       // a job of this upload is running
+        private boolean finished = false;   // the whole message was received
+        private boolean cancelled = false;
+        private boolean settled = false;
+        private TimerWheel.Task on_settled;
+
+        private Upload(long length, DiskExecutor<httpfsLibrary> disk, EventLoop loop) {
+            this.length = length;
+            this.disk = disk;
+            this.loop = loop;
+        }
+
+        /**
+         * @return the temporary file, null if the target cannot be written and the body was dropped
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return true if the body could not be written
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * @return bytes of the body received
+         */
+        public long getWritten() {
+            return written;
+        }
+
+        /**
+         * @return Content-Length of the request, the bytes of the body expected
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return true once the body is on disk and the file closed, nothing of the upload runs any more
+         */
+        public boolean isSettled() {
+            return settled;
+        }
+
+        /**
+         * Runs a task on the loop once the upload is settled, or soon if it is
+         * @param task TimerWheel.Task object
+         */
+        public void whenSettled(TimerWheel.Task task) {
+            if (settled)
+                loop.execute(task);
+            else
+                on_settled = task;
+        }
+
+        /**
+         * Deletes the temporary file, once it is not needed. Blocks on the disk, it is called on a worker
+         * or once the upload is settled
+         */
+        public void discard() {
+            close();
+            try {
+                if (file != null)
+                    Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.out.println("Error deleting " + file + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Deletes the temporary file from the DiskExecutor, after the job of the upload still running
+         */
+        public void cancel() {
+            if (cancelled)
+                return;
+            cancelled = true;
+            on_settled = null;
+            settled = false;
+            next();
+        }
+
+        private void write(byte[] payload, int offset, int count) {
+            count = (int) Math.min(count, length - written);
+            if (count <= 0)
+                return;
+            written += count;
+            queued.add(ByteBuffer.wrap(payload, offset, count));
+            next();
+        }
+
+        private void finish() {
+            finished = true;
+            next();
+        }
+
+        /**
+         * Creates the temporary file of the body on a worker, the payloads that arrive meanwhile are queued
+         * @param requestPathLine String object containing the request path or file.
+         */
+        private void create(String requestPathLine) {
+            busy = true;
+            submit(lib -> {
+                file = lib.createUpload(requestPathLine);
+                if (file != null)
+                    channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                return null;
+            });
+        }
+
+        /**
+         * Starts the next job of the upload unless one is running: deleting the file of an upload cancelled, writing
+         * the payloads queued, or closing the file once the whole body is written
+         */
+        private void next() {
+            if (busy || settled)
+                return;
+
+            if (cancelled) {
+                // Nothing runs after the file is deleted
+                settled = true;
+                busy = true;
+                submit(lib -> {
+                    discard();
+                    return null;
+                });
+                return;
+            }
+            if (!queued.isEmpty() && channel != null && !failed) {
+                ByteBuffer[] batch = queued.toArray(new ByteBuffer[0]);
+                queued.clear();
+                busy = true;
+                submit(lib -> {
+                    for (ByteBuffer buf : batch) {
+                        while (buf.hasRemaining())
+                            channel.write(buf);
+                    }
+                    return null;
+                });
+                return;
+            }
+            // The body of a target that cannot be written, or whose file failed, is dropped
+            queued.clear();
+            if (!finished)
+                return;
+            if (channel != null) {
+                busy = true;
+                submit(lib -> {
+                    close();
+                    return null;
+                });
+                return;
+            }
+
+            settled = true;
+            if (on_settled != null)
+                loop.execute(on_settled);
+            on_settled = null;
+        }
+
+        /**
+         * Runs a job of the upload on the DiskExecutor, tried again after RETRY_DELAY while its queue is full
+         * @param job Job run on a worker
+         */
+        private void submit(DiskExecutor.Job<httpfsLibrary, Object> job) {
+            boolean queued = disk.submit(job, loop, (result, error) -> {
+                busy = false;
+                if (error != null)
+                    fail(error);
+                next();
+            });
+            if (!queued)
+                loop.schedule(RETRY_DELAY, now -> submit(job));
+        }
+
+        private void fail(IOException e) {
+            System.out.println("Error writing the body to " + file + ": " + e.getMessage());
+            failed = true;
+        }
+
+        private void close() {
+            try {
+                if (channel != null)
+                    channel.close();
+            } catch (IOException e) {
+                failed = true;
+            }
+            channel = null;
+        }
+    }
+
+    /** Entry of the messages delivered whole */
+    private static final Upload NONE = new Upload(0, null, null);
+
+    private final DiskExecutor<httpfsLibrary> disk;
+    private final EventLoop loop;
+    private final ArrayDeque<Upload> uploads = new ArrayDeque<>();
+    private RequestParser request = new RequestParser();
+    private Upload upload;
+
+    /**
+     * Constructor for the RequestSpool class.
+     * @param disk DiskExecutor whose workers create and write the temporary files
+     * @param loop EventLoop of the stream, where the jobs complete
+     */
+    public RequestSpool(DiskExecutor<httpfsLibrary> disk, EventLoop loop) {
+        this.disk = disk;
+        this.loop = loop;
+    }
+
+    @Override
+    public void write(byte[] payload) {
+        int offset = 0;
+        if (upload == null) {
+            boolean in_head = !request.isHeadComplete();
+            offset = request.feed(payload, 0, payload.length);
+            if (in_head && request.isHeadComplete())
+                start();
+            if (upload == null && offset < payload.length)
+                offset += request.feed(payload, offset, payload.length - offset);
+        }
+        if (upload != null)
+            upload.write(payload, offset, payload.length - offset);
+    }
+
+    @Override
+    public byte[] finish() {
+        byte[] message = request.toByteArray();
+        request = new RequestParser();
+        if (upload == null) {
+            uploads.add(NONE);
+        }
+        else {
+            upload.finish();
+            uploads.add(upload);
+            upload = null;
+        }
+        return message;
+    }
+
+    /**
+     * @return the Upload of the oldest message delivered, null if that message was delivered whole
+     */
+    public Upload poll() {
+        Upload next = uploads.poll();
+        return next == NONE ? null : next;
+    }
+
+    /**
+     * Deletes the temporary files of the requests not answered yet
+     */
+    public void cancel() {
+        if (upload != null)
+            upload.cancel();
+        upload = null;
+        for (Upload pending : uploads) {
+            if (pending != NONE)
+                pending.cancel();
+        }
+        uploads.clear();
+    }
+
+    /**
+     * Starts writing the body of a POST request with a Content-Length and no Content-Encoding to a temporary file,
+     * once the head of the request is complete
+     */
+    private void start() {
+        if (!request.isMethod("POST") || request.getContentLength() < 0 || request.header("Content-Encoding") != null)
+            return;
+
+        upload = new Upload(request.getContentLength(), disk, loop);
+        upload.create(request.getUri());
+    }
+}
@@ -0,0 +1,127 @@
+package UDP;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * ResponseHeaders writes the status line and headers of a response straight into the bytes sent. The parts that
+ * never change are encoded once, the Date header is formatted at most once a second and shared by the responses
+ * of that second, and the other values are written character by character into an array of the exact length of
+ * the head, without building a String. The body is not part of the head, it is sent after it.
+ * Header values are ISO-8859-1, as HTTP/1.0 sends them.
+ */
+public class ResponseHeaders {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy h:mm:ss");
+
+    private static final byte[] VERSION = ascii("HTTP/1.0 ");
+    private static final byte[] DATE = ascii(" \r\nDate: ");
+    private static final byte[] SERVER = ascii("\r\nServer: localhost\r\nContent-Type: text/html");
+    private static final byte[] CONTENT_ENCODING = ascii("\r\nContent-Encoding: ");
+    private static final byte[] VARY = ascii("\r\nVary: Accept-Encoding");
+    private static final byte[] CONTENT_LENGTH = ascii("\r\nContent-length: ");
+    private static final byte[] END_KEEP_ALIVE = ascii("\r\nConnection: keep-alive\r\n\r\n");
+    private static final byte[] END_CLOSE = ascii("\r\nConnection: close\r\n\r\n");
+
+    /**
+     * Date header value of one second
+     */
+    private static class CachedDate {
+        final long second;
+        final byte[] value;
+
+        CachedDate(long second, byte[] value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+
+    private static volatile CachedDate date = new CachedDate(Long.MIN_VALUE, new byte[0]);
+
+    private ResponseHeaders() {
+    }
+
+    /**
+     * Encodes the head of a response
+     * @param status status code and reason phrase
+     * @param content_length number of bytes of the body, as sent
+     * @param content_encoding coding of the body, or null if it is sent as it is
+     * @param extra_headers more header lines, each preceded by CRLF, or an empty String
+     * @param keep_alive true if the server keeps the connection open after the response
+     * @return the bytes of the status line, the headers and the empty line that ends them
+     */
+    public static byte[] encode(String status, long content_length, String content_encoding, String extra_headers,
+                                boolean keep_alive) {
+        byte[] end = keep_alive ? END_KEEP_ALIVE : END_CLOSE;
+        byte[] date_value = date();
+        int length = VERSION.length + status.length() + DATE.length + date_value.length + SERVER.length
+                + extra_headers.length() + CONTENT_LENGTH.length + digits(content_length) + end.length;
+        if (content_encoding != null)
+            length += CONTENT_ENCODING.length + content_encoding.length() + VARY.length;
+
+        byte[] head = new byte[length];
+        int at = put(head, 0, VERSION);
+        at = put(head, at, status);
+        at = put(head, at, DATE);
+        at = put(head, at, date_value);
+        at = put(head, at, SERVER);
+        if (content_encoding != null) {
+            at = put(head, at, CONTENT_ENCODING);
+            at = put(head, at, content_encoding);
+            at = put(head, at, VARY);
+        }
+        at = put(head, at, extra_headers);
+        at = put(head, at, CONTENT_LENGTH);
+        at = put(head, at, content_length);
+        put(head, at, end);
+        return head;
+    }
+
+    /**
+     * @return the value of the Date header of the current second
+     */
+    private static byte[] date() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate cached = date;
+        if (cached.second != second) {
+            String value = DATE_FORMAT.withZone(ZoneId.systemDefault()).format(Instant.ofEpochSecond(second));
+            cached = new CachedDate(second, ascii(value));
+            date = cached;
+        }
+        return cached.value;
+    }
+
+    private static int digits(long n) {
+        int digits = 1;
+        while (n >= 10) {
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int put(byte[] head, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, head, at, bytes.length);
+        return at + bytes.length;
+    }
+
+    private static int put(byte[] head, int at, String s) {
+        for (int i = 0; i < s.length(); i++)
+            head[at++] = (byte) s.charAt(i);
+        return at;
+    }
+
+    private static int put(byte[] head, int at, long n) {
+        int end = at + digits(n);
+        for (int i = end - 1; i >= at; i--, n /= 10)
+            head[i] = (byte) ('0' + n % 10);
+        return end;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        put(bytes, 0, s);
+        return bytes;
+    }
+}
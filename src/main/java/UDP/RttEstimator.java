@@ -0,0 +1,66 @@
+package UDP;
+
+/**
+ * RttEstimator computes the retransmission timeout (RTO) of one connection from its round trip time samples,
+ * the same way TCP does: SRTT and RTTVAR are smoothed averages of the samples and RTO = SRTT + 4 * RTTVAR.
+ * Only packets that were never retransmitted give a sample (Karn's rule), since the ACK of a retransmitted
+ * packet cannot be matched to one transmission. Every timeout doubles the RTO until the next valid sample.
+ */
+public class RttEstimator {
+
+    public static final long INITIAL_RTO = 1000;
+    public static final long MIN_RTO = 10;
+    public static final long MAX_RTO = 10000;
+
+    private static final double ALPHA = 0.125;
+    private static final double BETA = 0.25;
+    private static final long CLOCK_GRANULARITY = 1;
+
+    private double srtt = -1;
+    private double rttvar;
+    private long rto = INITIAL_RTO;
+
+    /**
+     * Updates SRTT, RTTVAR and the RTO with a new measurement
+     * @param rtt round trip time in milliseconds of a packet that was sent once
+     */
+    public void sample(long rtt) {
+        if (srtt < 0) {
+            srtt = rtt;
+            rttvar = rtt / 2.0;
+        }
+        else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+        }
+
+        long computed = (long) Math.ceil(srtt + Math.max(CLOCK_GRANULARITY, 4 * rttvar));
+        rto = Math.min(MAX_RTO, Math.max(MIN_RTO, computed));
+    }
+
+    /**
+     * Doubles the RTO after a retransmission timeout
+     */
+    public void backoff() {
+        rto = Math.min(MAX_RTO, rto * 2);
+    }
+
+    /**
+     * @return the current retransmission timeout in milliseconds
+     */
+    public long getRto() {
+        return rto;
+    }
+
+    /**
+     * @return the smoothed round trip time in milliseconds, or -1 before the first sample
+     */
+    public long getSrtt() {
+        return Math.round(srtt);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("srtt=%dms rto=%dms", getSrtt(), rto);
+    }
+}
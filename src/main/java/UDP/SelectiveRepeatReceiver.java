@@ -0,0 +1,158 @@
+package UDP;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * SelectiveRepeatReceiver reassembles the payloads of a SelectiveRepeatSender.
+ * Packets inside the receive window are buffered even when they arrive out of order,
+ * and delivered in sequence order. Every FIN ends a message, the packets after it start the next one, so
+ * several pipelined messages can follow each other on the same sequence numbers. The window is a ring of slots indexed by
+ * sequence number, so the runs received out of order can be reported as SACK blocks.
+ * With a Sink the payloads delivered in order go to the sink instead of a buffer, which decides what the message is.
+ */
+public class SelectiveRepeatReceiver {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1024;
+
+    /**
+     * Takes the payloads of the messages in sequence order, each one once
+     */
+    public interface Sink {
+        void write(byte[] payload);
+
+        /**
+         * @return the message completed by a FIN, the payloads after it start the next one
+         */
+        byte[] finish();
+    }
+
+    private final int window_size;
+    private final Packet[] buffered;
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private final ArrayDeque<byte[]> messages = new ArrayDeque<>();
+    private long expected;
+    private long highest;   // sequence number following the highest packet buffered
+    private Sink sink;
+
+    /**
+     * Constructor for the SelectiveRepeatReceiver class.
+     * @param first_seq sequence number of the first packet of the first message
+     * @param window_size number of sequence numbers accepted ahead of the next expected one
+     */
+    public SelectiveRepeatReceiver(long first_seq, int window_size) {
+        this.expected = first_seq;
+        this.highest = first_seq;
+        this.window_size = window_size;
+        this.buffered = new Packet[window_size];
+    }
+
+    /**
+     * Buffers a DATA or FIN packet and delivers every packet that is now in order, completing a message at each FIN
+     * @param packet Packet received from the peer
+     * @return true if the packet has to be acknowledged
+     */
+    public boolean receive(Packet packet) {
+        long seq_no = packet.getSequenceNumber();
+
+        // Already delivered, the ACK was lost so it is sent again
+        if (seq_no < expected)
+            return true;
+
+        if (seq_no >= expected + window_size)
+            return false;
+
+        int slot = slot(seq_no);
+        if (buffered[slot] == null)
+            buffered[slot] = packet;
+        highest = Math.max(highest, seq_no + 1);
+
+        Packet next;
+        while ((next = buffered[slot(expected)]) != null) {
+            buffered[slot(expected)] = null;
+            if (next.getType() == PacketType.FIN.getValue()) {
+                messages.add(sink != null ? sink.finish() : data.toByteArray());
+                data.reset();
+            }
+            else if (sink != null)
+                sink.write(next.getPayload());
+            else
+                data.write(next.getPayload(), 0, next.getPayload().length);
+            expected++;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param sink Sink the payloads go to from the next one delivered
+     */
+    public void setSink(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * @return true if a complete message is waiting to be polled
+     */
+    public boolean hasMessage() {
+        return !messages.isEmpty();
+    }
+
+    /**
+     * @return the oldest complete message, or null if there is none
+     */
+    public byte[] pollMessage() {
+        return messages.poll();
+    }
+
+    /**
+     * @return bytes of the current message delivered in order so far, not completed by a FIN yet
+     */
+    public byte[] getPartialMessage() {
+        return data.toByteArray();
+    }
+
+    /**
+     * @return true if packets after a missing one are buffered
+     */
+    public boolean hasGap() {
+        return highest > expected;
+    }
+
+    /**
+     * @return the next sequence number expected, the one following the last FIN once a message is complete
+     */
+    public long getNextSequenceNumber() {
+        return expected;
+    }
+
+    /**
+     * Writes the runs of packets buffered above the next expected one, each as its first sequence number and
+     * the sequence number following it, lowest first
+     * @param buf ByteBuffer object the blocks are written to
+     * @param max_blocks maximum number of blocks written
+     * @return number of blocks written
+     */
+    public int writeSackBlocks(ByteBuffer buf, int max_blocks) {
+        int count = 0;
+        long seq_no = expected + 1;
+        while (seq_no < highest && count < max_blocks) {
+            if (buffered[slot(seq_no)] == null) {
+                seq_no++;
+                continue;
+            }
+            long start = seq_no;
+            while (seq_no < highest && buffered[slot(seq_no)] != null)
+                seq_no++;
+            buf.putInt((int) start);
+            buf.putInt((int) seq_no);
+            count++;
+        }
+        return count;
+    }
+
+    private int slot(long seq_no) {
+        return (int) (seq_no % window_size);
+    }
+}
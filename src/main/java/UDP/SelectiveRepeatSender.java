@@ -0,0 +1,436 @@
+package UDP;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SelectiveRepeatSender sends a list of Packets keeping up to window_size of them in flight.
+ * Every in-flight packet has its own retransmission timer on the EventLoop and ACKs are accepted in any order;
+ * the window slides forward as soon as its oldest packet is acknowledged. A packet is retransmitted before its
+ * timeout once DUP_THRESH duplicate ACKs arrived for it, or DUP_THRESH packets after it were selectively acknowledged,
+ * and it has been in flight longer than the reordering window.
+ * The packets must carry consecutive sequence numbers, the last one is normally the FIN.
+ * A packet is encoded once in a pooled direct buffer when it enters the window, retransmissions send the same
+ * bytes again and the buffer goes back to the pool when the packet is acknowledged.
+ * New packets are also limited by the congestion window of the connection, which the StreamScheduler shares
+ * with the senders of the other streams and, when the CongestionController gives a pacing rate, spread over time
+ * instead of sent in one burst.
+ * More packets can be appended while it runs, so the messages of a persistent connection follow each other
+ * on the same sequence numbers; the acknowledged packets are dropped from the front when that happens.
+ * PARITY packets appended with the packets are sent once, right after the last packet of their group.
+ * With a Source the packets do not have to exist up front: it is asked for more whenever fewer than window_size
+ * packets are left to send, so a long message is held one or two windows at a time.
+ */
+public class SelectiveRepeatSender {
+
+    public static final int DEFAULT_WINDOW_SIZE = 16;
+    public static final int MAX_RETRIES = 10;
+    public static final int FIN_RETRIES = 3;
+    public static final int DUP_THRESH = 3;
+
+    /**
+     * Segments more packets of the messages to send, handed over with add
+     */
+    public interface Source {
+        void refill() throws IOException;
+    }
+
+    private final EventLoop loop;
+    private final SocketAddress routerAddress;
+    private final List<Packet> packets = new ArrayList<>();
+    private final Map<Long, Packet> parity = new HashMap<>();   // by sequence number of the last packet of the group
+    private final int window_size;
+    private final RttEstimator rtt;
+    private final StreamScheduler scheduler;
+    private final CongestionController cc;
+    private final Runnable on_complete;
+    private Source source;
+    private long first_seq;    // sequence number of the packet at index 0
+    private boolean[] acked = new boolean[0];
+    private long[] sent_at = new long[0];
+    private int[] retries = new int[0];
+    private TimerWheel.Timer[] timers = new TimerWheel.Timer[0];
+    private ByteBuffer[] encoded = new ByteBuffer[0];
+    private boolean[] fast_retransmitted = new boolean[0];
+    private long[] delivered_at_send = new long[0];
+    private long[] delivered_time_at_send = new long[0];
+    private int base = 0;   // index of the oldest unacknowledged packet
+    private int next = 0;   // index of the next packet never sent
+    private int highest_acked = -1;
+    private int dup_acks = 0;
+    private int in_flight = 0;
+    private long last_backoff = -1;
+    private boolean peer_lost = false;
+    private boolean finished = false;
+
+    /**
+     * Constructor for the SelectiveRepeatSender class.
+     * @param loop EventLoop object of the channel
+     * @param routerAddress address of the router the packets go through
+     * @param packets Packets to send, with consecutive sequence numbers
+     * @param window_size maximum number of unacknowledged packets
+     * @param rtt RttEstimator of the connection, that gives the retransmission timeout
+     * @param scheduler StreamScheduler of the connection, with its CongestionController
+     * @param on_complete called when every packet appended so far is acknowledged, and once when the sender gives up
+     */
+    public SelectiveRepeatSender(EventLoop loop, SocketAddress routerAddress, List<Packet> packets, int window_size,
+                                 RttEstimator rtt, StreamScheduler scheduler, Runnable on_complete) {
+        this.loop = loop;
+        this.routerAddress = routerAddress;
+        this.window_size = Math.max(1, window_size);
+        this.rtt = rtt;
+        this.scheduler = scheduler;
+        this.cc = scheduler.getCongestionController();
+        this.on_complete = on_complete;
+        this.first_seq = packets.isEmpty() ? 0 : packets.get(0).getSequenceNumber();
+        resize(packets);
+    }
+
+    /**
+     * Sends the first window of packets, the rest follows as ACKs arrive
+     */
+    public void start() throws IOException {
+        fillWindow(loop.now());
+        if (isComplete())
+            on_complete.run();
+    }
+
+    /**
+     * Adds packets after the last one and sends those that fit in the window
+     * @param more Packets whose sequence numbers follow the last packet appended
+     */
+    public void append(List<Packet> more) throws IOException {
+        append(more, new ArrayList<>());
+    }
+
+    /**
+     * Adds packets after the last one with their PARITY packets and sends those that fit in the window
+     * @param more Packets whose sequence numbers follow the last packet appended
+     * @param more_parity PARITY Packets of the groups of those packets
+     */
+    public void append(List<Packet> more, List<Packet> more_parity) throws IOException {
+        if (finished || more.isEmpty())
+            return;
+
+        add(more, more_parity);
+        fillWindow(loop.now());
+    }
+
+    /**
+     * Adds packets after the last one without sending any, for the Source while the scheduler is sending
+     * @param more Packets whose sequence numbers follow the last packet appended
+     * @param more_parity PARITY Packets of the groups of those packets
+     */
+    void add(List<Packet> more, List<Packet> more_parity) {
+        if (finished || more.isEmpty())
+            return;
+
+        if (packets.isEmpty())
+            first_seq = more.get(0).getSequenceNumber();
+        for (Packet repair : more_parity)
+            parity.put(XorParity.lastSequenceNumber(repair), repair);
+        compact();
+        resize(more);
+    }
+
+    /**
+     * @param source Source asked for more packets when fewer than window_size are left to send
+     */
+    public void setSource(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * @return packets appended and never sent
+     */
+    public int getWaiting() {
+        return packets.size() - next;
+    }
+
+    /**
+     * Marks every packet the ACK covers as acknowledged, slides the window, fast retransmits the packets the
+     * SACK blocks show as lost and sends the packets that now fit in the window
+     * @param ack ACK Packet received from the peer, with an AckPayload
+     * @param now current time in milliseconds
+     */
+    public void onAck(Packet ack, long now) throws IOException {
+        AckPayload payload = AckPayload.parse(ack.getPayload());
+        if (finished || payload == null)
+            return;
+
+        boolean was_complete = isComplete();
+        int old_base = base;
+        int sacked = 0;
+
+        // The packet that triggered the ACK first, it is the only one that gives an RTT sample
+        sacked += acknowledge(payload.getSequenceNumber() - first_seq, now, true);
+        for (long index = base; index < payload.getCumulative() - first_seq && index < next; index++)
+            sacked += acknowledge(index, now, false);
+        // The blocks come from the wire, only the part of each inside the window is looked at
+        int blocks = Math.min(payload.getBlockCount(), AckPayload.MAX_SACK_BLOCKS);
+        for (int i = 0; i < blocks; i++) {
+            long start = Math.max(payload.getBlockStart(i) - first_seq, base);
+            long end = Math.min(payload.getBlockEnd(i) - first_seq, next);
+            for (long index = start; index < end; index++)
+                sacked += acknowledge(index, now, false);
+        }
+
+        while (base < next && acked[base])
+            base++;
+
+        if (base == old_base && base < next)
+            dup_acks++;
+        else
+            dup_acks = 0;
+        if (sacked > 0 && base < next)
+            fastRetransmit(now);
+
+        fillWindow(now);
+        if (!was_complete && isComplete())
+            on_complete.run();
+    }
+
+    /**
+     * Stops every retransmission timer without calling on_complete
+     */
+    public void cancel() {
+        finished = true;
+        parity.clear();
+        scheduler.remove(this, in_flight);
+        in_flight = 0;
+        for (int i = 0; i < next; i++) {
+            loop.cancel(timers[i]);
+            loop.release(encoded[i]);
+            encoded[i] = null;
+        }
+    }
+
+    /**
+     * @return true when every packet appended so far has been acknowledged or the sender gave up
+     */
+    public boolean isComplete() {
+        return finished || base >= packets.size();
+    }
+
+    /**
+     * @return true once the sender gave up or was cancelled, it sends nothing more
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return true when only the last packet, normally the FIN, may still be unacknowledged
+     */
+    public boolean isDataAcknowledged() {
+        return base >= packets.size() - 1;
+    }
+
+    /**
+     * @return true if the sender gave up because a packet was never acknowledged
+     */
+    public boolean isPeerLost() {
+        return peer_lost;
+    }
+
+    /**
+     * @return packets sent and not acknowledged yet
+     */
+    public int getInFlight() {
+        return in_flight;
+    }
+
+    public CongestionController getCongestionController() {
+        return cc;
+    }
+
+    /**
+     * Hands the packets that fit in the window to the scheduler, which sends them as the congestion window allows
+     * @param now current time in milliseconds
+     */
+    private void fillWindow(long now) throws IOException {
+        scheduler.schedule(this, now);
+    }
+
+    /**
+     * @return true if a packet never sent fits in the window
+     */
+    boolean hasWaiting() {
+        return !finished && next < packets.size() && next < base + window_size;
+    }
+
+    /**
+     * Sends the next packet never sent, called by the scheduler when it is the turn of this sender
+     * @param now current time in milliseconds
+     */
+    void sendNext(long now) throws IOException {
+        sent_at[next] = now;
+        delivered_at_send[next] = scheduler.getDelivered();
+        delivered_time_at_send[next] = scheduler.getDeliveredTime();
+        encoded[next] = loop.encode(packets.get(next));
+        in_flight++;
+        send(next);
+        Packet repair = parity.remove(packets.get(next).getSequenceNumber());
+        if (repair != null)
+            loop.send(repair, routerAddress);
+        next++;
+        if (source != null && getWaiting() < window_size)
+            source.refill();
+    }
+
+    /**
+     * Marks one packet acknowledged
+     * @param index index of the packet, ignored if it is not in flight or already acknowledged
+     * @param now current time in milliseconds
+     * @param sample true if the ACK was triggered by this packet, so it gives an RTT sample
+     * @return 1 if the packet was newly acknowledged, 0 otherwise
+     */
+    private int acknowledge(long index, long now, boolean sample) {
+        if (index < base || index >= next || acked[(int) index])
+            return 0;
+
+        int i = (int) index;
+        acked[i] = true;
+        loop.cancel(timers[i]);
+        loop.release(encoded[i]);
+        encoded[i] = null;
+        in_flight--;
+        scheduler.onAcked(now);
+        highest_acked = Math.max(highest_acked, i);
+
+        // Karn's rule: the ACK of a retransmitted packet is ambiguous
+        long rtt_sample = -1;
+        double delivery_rate = -1;
+        if (sample && retries[i] == 0) {
+            rtt_sample = now - sent_at[i];
+            rtt.sample(rtt_sample);
+            delivery_rate = (double) (scheduler.getDelivered() - delivered_at_send[i])
+                    / Math.max(1, now - delivered_time_at_send[i]);
+        }
+        cc.onAck(now, rtt_sample, delivery_rate, scheduler.getInFlight());
+        return 1;
+    }
+
+    /**
+     * Resends, once, every unacknowledged packet with at least DUP_THRESH acknowledged packets after it.
+     * The oldest one is also resent after DUP_THRESH duplicate ACKs. Since the router reorders packets, a packet
+     * only counts as lost once it has been in flight for more than a quarter of SRTT longer than SRTT
+     * @param now current time in milliseconds
+     */
+    private void fastRetransmit(long now) throws IOException {
+        long srtt = Math.max(0, rtt.getSrtt());
+        long reorder_window = srtt + Math.max(1, srtt / 4);
+        int acked_after = 0;
+        for (int i = highest_acked; i >= base; i--) {
+            if (acked[i]) {
+                acked_after++;
+                continue;
+            }
+            boolean lost = acked_after >= DUP_THRESH || (i == base && dup_acks >= DUP_THRESH);
+            if (lost && !fast_retransmitted[i] && now - sent_at[i] > reorder_window) {
+                fast_retransmitted[i] = true;
+                cc.onLoss(now);
+                retries[i]++;
+                System.out.println("Fast retransmit of Packet with Seq # :" + packets.get(i).getSequenceNumber());
+                send(i);
+            }
+        }
+    }
+
+    private void send(int index) throws IOException {
+        loop.cancel(timers[index]);
+        loop.send(encoded[index], routerAddress);
+        // The index of a packet changes when the front is dropped, its sequence number does not
+        long seq_no = first_seq + index;
+        timers[index] = loop.schedule(rtt.getRto(), now -> onTimeout((int) (seq_no - first_seq), now));
+    }
+
+    /**
+     * Drops the acknowledged packets in front of the window
+     */
+    private void compact() {
+        if (base == 0)
+            return;
+
+        int size = packets.size();
+        packets.subList(0, base).clear();
+        acked = Arrays.copyOfRange(acked, base, size);
+        sent_at = Arrays.copyOfRange(sent_at, base, size);
+        retries = Arrays.copyOfRange(retries, base, size);
+        timers = Arrays.copyOfRange(timers, base, size);
+        encoded = Arrays.copyOfRange(encoded, base, size);
+        fast_retransmitted = Arrays.copyOfRange(fast_retransmitted, base, size);
+        delivered_at_send = Arrays.copyOfRange(delivered_at_send, base, size);
+        delivered_time_at_send = Arrays.copyOfRange(delivered_time_at_send, base, size);
+        first_seq += base;
+        next -= base;
+        highest_acked -= base;
+        base = 0;
+    }
+
+    /**
+     * Appends packets to the list and grows the per packet arrays with cleared entries for them
+     * @param more Packets to append
+     */
+    private void resize(List<Packet> more) {
+        int size = packets.size();
+        int new_size = size + more.size();
+        packets.addAll(more);
+        acked = Arrays.copyOf(acked, new_size);
+        sent_at = Arrays.copyOf(sent_at, new_size);
+        retries = Arrays.copyOf(retries, new_size);
+        timers = Arrays.copyOf(timers, new_size);
+        encoded = Arrays.copyOf(encoded, new_size);
+        fast_retransmitted = Arrays.copyOf(fast_retransmitted, new_size);
+        delivered_at_send = Arrays.copyOf(delivered_at_send, new_size);
+        delivered_time_at_send = Arrays.copyOf(delivered_time_at_send, new_size);
+    }
+
+    /**
+     * Retransmission timer of one packet
+     * @param index index of the packet
+     * @param now current time in milliseconds
+     */
+    private void onTimeout(int index, long now) throws IOException {
+        if (finished || index < 0 || acked[index])
+            return;
+
+        Packet packet = packets.get(index);
+        int max_retries = packet.getType() == PacketType.FIN.getValue() ? FIN_RETRIES : MAX_RETRIES;
+        if (retries[index] >= max_retries) {
+            // A FIN that is never acknowledged means the peer already got everything and left
+            peer_lost = packet.getType() != PacketType.FIN.getValue();
+            System.out.println("No ACK for packet with Seq # : " + packet.getSequenceNumber() + ", giving up");
+            base = packets.size();
+            finish();
+            return;
+        }
+
+        // Back off once per timeout event, not once per expired packet
+        if (now != last_backoff) {
+            rtt.backoff();
+            last_backoff = now;
+        }
+        if (retries[index] == 0)
+            cc.onLoss(now);
+        else
+            cc.onTimeout(now);
+        retries[index]++;
+        System.out.println("Timeout, resending Packet with Seq # :" + packet.getSequenceNumber() + " (rto=" + rtt.getRto() + "ms)");
+        send(index);
+    }
+
+    private void finish() {
+        if (finished)
+            return;
+
+        cancel();
+        on_complete.run();
+    }
+}
@@ -0,0 +1,536 @@
+package UDP;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ServerConnection holds the state of one client of the UDPServer, identified by the peer address and port
+ * of its packets. The server loop gives it every packet of that peer, and its SYN_ACK, retransmission and idle
+ * timers run on the same EventLoop, so several clients can interleave their packets on the same channel.
+ * The connection is persistent and multiplexed: every request comes on a Stream of its own and gets its response
+ * on the same stream, the streams being served at the same time and sharing the congestion window in turns.
+ * A stream can also carry several pipelined requests, each ending with a FIN, answered one after the other.
+ * Responses are produced on the DiskExecutor, so reading and writing files never holds up the packets of the
+ * loop, and each one is sent from the loop once it is ready. The bodies of uploads are written and the files of
+ * responses read ahead on the DiskExecutor too, by the RequestSpool and the Stream. The connection closes once every
+ * stream up to the one of a request with "Connection: close" delivered its response, or when no request arrives
+ * for KEEP_ALIVE_TIMEOUT once every response is delivered.
+ */
+public class ServerConnection {
+
+    public static final long IDLE_TIMEOUT = 30000;
+    public static final long KEEP_ALIVE_TIMEOUT = 5000;
+
+
+    private final InetSocketAddress peer;
+    private final int peer_bits;
+    private final EventLoop loop;
+    private final SocketAddress routerAddress;
+    private final httpfsLibrary httpfsLib;
+    private final DiskExecutor<httpfsLibrary> disk;
+    private final int window_size;
+    private final FastOpenCookies cookies;
+    private final Runnable on_close;
+    private final RttEstimator rtt = new RttEstimator();
+    private final CongestionController cc;
+    private final StreamScheduler scheduler;
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private final Map<Integer, RequestSpool> spools = new HashMap<>();
+    private final Set<Stream> working = new HashSet<>();  // streams whose next response is being produced
+    private PathMtu path;
+    private int parity_group = 0;
+    private final byte[] ack_payload = new byte[AckPayload.MAX_LEN];
+
+    private ConnectionState state = ConnectionState.CLOSED;
+    private Packet syn_ack;
+    private boolean fast_open = false;
+    private long syn_ack_sent;
+    private int syn_ack_retries;
+    private TimerWheel.Timer syn_ack_timer;
+    private TimerWheel.Timer idle_timer;
+    private long last_activity;
+    private int close_stream = -1;  // stream of the request with "Connection: close"
+    private boolean closed = false;
+
+    /**
+     * Constructor for the ServerConnection class.
+     * @param peer address and port of the client
+     * @param loop EventLoop object of the server channel
+     * @param routerAddress address of the router the client packets come from
+     * @param httpfsLib httpfsLibrary object of the loop thread, that produces the error responses
+     * @param disk DiskExecutor whose workers produce the HTTP responses, each with a httpfsLibrary of its own
+     * @param window_size selective-repeat window size of the responses
+     * @param congestion CongestionAlgorithm of the responses
+     * @param cookies FastOpenCookies object of the server
+     * @param on_close called once when the connection closes
+     */
+    public ServerConnection(InetSocketAddress peer, EventLoop loop, SocketAddress routerAddress, httpfsLibrary httpfsLib,
+                            DiskExecutor<httpfsLibrary> disk, int window_size, CongestionAlgorithm congestion,
+                            FastOpenCookies cookies, Runnable on_close) {
+        this.peer = peer;
+        this.peer_bits = PacketView.toBits(peer.getAddress());
+        this.loop = loop;
+        this.routerAddress = routerAddress;
+        this.httpfsLib = httpfsLib;
+        this.disk = disk;
+        this.window_size = window_size;
+        this.cc = congestion.newController(rtt);
+        this.scheduler = new StreamScheduler(loop, cc);
+        this.path = new PathMtu(loop, routerAddress, peer, rtt, Packet.MAX_PAYLOAD_LEN);
+        this.cookies = cookies;
+        this.on_close = on_close;
+        this.last_activity = loop.now();
+        this.idle_timer = loop.schedule(IDLE_TIMEOUT, this::onIdleTimer);
+    }
+
+    /**
+     * Advances the state machine with a packet received from the peer
+     * @param packet Packet object received from client
+     * @param now current time in milliseconds
+     */
+    public void onPacket(Packet packet, long now) throws IOException {
+        last_activity = now;
+        int type = packet.getType();
+
+        if (type == PacketType.SYN.getValue()) {
+            onSyn(packet, now);
+            return;
+        }
+        if (type == PacketType.PROBE.getValue()) {
+            PathMtu.answer(loop, packet, routerAddress);
+            return;
+        }
+        if (type == PacketType.PROBE_ACK.getValue()) {
+            path.onProbeAck(packet);
+            return;
+        }
+
+        switch (state) {
+            case SYN_RCVD:
+                if (type == PacketType.ACK.getValue()) {
+                    System.out.println("Client " + peer + " ACK # : " + AckPayload.parse(packet.getPayload()));
+                    if (syn_ack_retries == 0)
+                        rtt.sample(now - syn_ack_sent);
+                    establish();
+                }
+                // The ACK of the SYN_ACK was lost but the request already started
+                else if (isStreamPacket(type)) {
+                    establish();
+                    onStreamPacket(packet);
+                }
+                break;
+
+            case ESTABLISHED:
+            case RECEIVING_BODY:
+            case SENDING:
+            case FIN_WAIT:
+                if (type == PacketType.ACK.getValue()) {
+                    Stream stream = streams.get(packet.getStreamId());
+                    if (stream == null)
+                        break;
+                    stream.onAck(packet, now);
+                    if (state == ConnectionState.SENDING && isDataAcknowledged())
+                        state = ConnectionState.FIN_WAIT;
+                }
+                else if (isStreamPacket(type)) {
+                    onStreamPacket(packet);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    public ConnectionState getState() {
+        return state;
+    }
+
+    /**
+     * @return the current retransmission timeout of this connection in milliseconds
+     */
+    public long getRto() {
+        return rtt.getRto();
+    }
+
+    public CongestionController getCongestionController() {
+        return cc;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Step 2 of the 3-way handshake, a repeated SYN gets the same SYN_ACK and a new SYN restarts the connection.
+     * A SYN asking for a cookie gets one in the SYN_ACK. A SYN carrying the request with a valid cookie is a fast
+     * open: the SYN_ACK accepts it and the response starts right away on the first stream.
+     * The SYN_ACK confirms the largest payload both sides accept and the XOR parity group size the client asked for,
+     * and the probes of the path to the client go
+     * just before it, so their PROBE_ACKs usually arrive before the first request is complete
+     * @param packet SYN Packet received from client
+     * @param now current time in milliseconds
+     */
+    private void onSyn(Packet packet, long now) throws IOException {
+        boolean repeated = syn_ack != null && syn_ack.getSequenceNumber() == packet.getSequenceNumber() + 1
+                && (state == ConnectionState.SYN_RCVD || (fast_open && state != ConnectionState.CLOSED));
+        if (repeated) {
+            syn_ack_retries++;
+            System.out.println("Sending SYN_ACK again, Seq # :" + syn_ack.getSequenceNumber());
+            if (fast_open)
+                loop.send(syn_ack, routerAddress);
+            else
+                send_syn_ack();
+            return;
+        }
+
+        System.out.println("\n---------Establishing connection with " + peer + " through 3-way handshake---------\n");
+        HandshakeOptions options = HandshakeOptions.parse(packet.getPayload());
+        System.out.println("Client options : " + options);
+
+        // The client started over, whatever it was still receiving is abandoned
+        cancelStreams();
+        close_stream = -1;
+        path.cancel();
+
+        HandshakeOptions reply = new HandshakeOptions();
+        boolean valid_cookie = cookies.verify(peer.getAddress(), options.get(HandshakeOptions.COOKIE));
+        if (options.has(HandshakeOptions.COOKIE_REQUEST) || (options.has(HandshakeOptions.COOKIE) && !valid_cookie))
+            reply.put(HandshakeOptions.COOKIE, cookies.issue(peer.getAddress()));
+        fast_open = valid_cookie && options.has(HandshakeOptions.FAST_OPEN_DATA);
+        if (fast_open)
+            reply.put(HandshakeOptions.FAST_OPEN_ACCEPTED);
+        int max_payload = Math.min(options.getInt(HandshakeOptions.MAX_PAYLOAD, Packet.MAX_PAYLOAD_LEN),
+                PathMtu.MAX_PAYLOAD_LEN);
+        if (options.has(HandshakeOptions.MAX_PAYLOAD))
+            reply.putInt(HandshakeOptions.MAX_PAYLOAD, max_payload);
+        path = new PathMtu(loop, routerAddress, peer, rtt, max_payload);
+        path.start();
+        byte[] parity = options.get(HandshakeOptions.PARITY);
+        parity_group = parity != null && parity.length == 1 ? Byte.toUnsignedInt(parity[0]) : 0;
+        if (parity_group < 2 || parity_group > XorParity.MAX_GROUP_SIZE)
+            parity_group = 0;
+        else
+            reply.put(HandshakeOptions.PARITY, parity);
+
+        syn_ack = createPacket(packet, reply.encode(), packet.getSequenceNumber() + 1, PacketType.SYN_ACK.getValue());
+        syn_ack_retries = 0;
+        syn_ack_sent = now;
+        System.out.println("Sending SYN_ACK with options " + reply + " and Seq # :" + syn_ack.getSequenceNumber());
+
+        if (fast_open) {
+            System.out.println("\n---------Fast open with " + peer + ", request in the SYN---------\n\n");
+            loop.send(syn_ack, routerAddress);
+            establish();
+            respond(openStream(Stream.FIRST), options.get(HandshakeOptions.FAST_OPEN_DATA));
+        }
+        else {
+            state = ConnectionState.SYN_RCVD;
+            send_syn_ack();
+        }
+    }
+
+    private void send_syn_ack() throws IOException {
+        loop.cancel(syn_ack_timer);
+        loop.send(syn_ack, routerAddress);
+        syn_ack_timer = loop.schedule(rtt.getRto(), this::onSynAckTimer);
+    }
+
+    /**
+     * Retransmission timer of the SYN_ACK
+     * @param now current time in milliseconds
+     */
+    private void onSynAckTimer(long now) throws IOException {
+        if (state != ConnectionState.SYN_RCVD)
+            return;
+
+        if (syn_ack_retries >= SelectiveRepeatSender.MAX_RETRIES) {
+            System.out.println("\n---------Connection with " + peer + " failed---------\n\n");
+            close();
+            return;
+        }
+        syn_ack_retries++;
+        rtt.backoff();
+        send_syn_ack();
+    }
+
+    /**
+     * Idle timer, re-armed for the remaining time when the peer was active since it was scheduled.
+     * A connection waiting for its next request gets KEEP_ALIVE_TIMEOUT, one in the middle of an exchange IDLE_TIMEOUT
+     * @param now current time in milliseconds
+     */
+    private void onIdleTimer(long now) {
+        if (closed)
+            return;
+
+        long timeout = state == ConnectionState.ESTABLISHED ? KEEP_ALIVE_TIMEOUT : IDLE_TIMEOUT;
+        long idle = now - last_activity;
+        if (idle >= timeout) {
+            System.out.println("Connection with " + peer + " idle, closing");
+            close();
+        }
+        else {
+            idle_timer = loop.schedule(timeout - idle, this::onIdleTimer);
+        }
+    }
+
+    /**
+     * Step 3 of the 3-way handshake, the handshake ACK comes on stream 0 and the requests on the streams after it
+     */
+    private void establish() {
+        loop.cancel(syn_ack_timer);
+        state = ConnectionState.ESTABLISHED;
+        System.out.println("\n---------Connection with " + peer + " established---------\n\n");
+    }
+
+    /**
+     * Creates the Stream of an ID the client used for the first time
+     * @param id stream ID
+     * @return Stream object
+     */
+    private Stream openStream(int id) {
+        Stream stream = new Stream(id, peer, loop, routerAddress, window_size, rtt, scheduler, path, this::send_ack,
+                this::onResponseComplete);
+        stream.setParityGroup(parity_group);
+        stream.setDiskExecutor(disk);
+        RequestSpool spool = new RequestSpool(disk, loop);
+        stream.getReceiver().setSink(spool);
+        streams.put(id, stream);
+        spools.put(id, spool);
+        return stream;
+    }
+
+    /**
+     * @param type type of a packet
+     * @return true for the packets that belong to a stream: DATA, FIN and PARITY
+     */
+    private static boolean isStreamPacket(int type) {
+        return type == PacketType.DATA.getValue() || type == PacketType.FIN.getValue()
+                || type == PacketType.PARITY.getValue();
+    }
+
+    /**
+     * Reassembles the requests of a stream, each one delivered in order up to its FIN gets its response, once the
+     * response of the one before it is produced
+     * @param packet DATA, FIN or PARITY Packet received from client
+     */
+    private void onStreamPacket(Packet packet) throws IOException {
+        int id = packet.getStreamId();
+        if (id == Stream.HANDSHAKE)
+            return;
+
+        Stream stream = streams.get(id);
+        if (stream == null)
+            stream = openStream(id);
+        if (state == ConnectionState.ESTABLISHED)
+            state = ConnectionState.RECEIVING_BODY;
+        stream.receive(packet);
+        respondNext(stream);
+    }
+
+    /**
+     * Starts producing the response of the next request of a stream, unless the response of the one before is not
+     * produced yet
+     * @param stream Stream the requests came on
+     */
+    private void respondNext(Stream stream) throws IOException {
+        if (!working.contains(stream) && stream.hasMessage())
+            respond(stream, stream.pollMessage());
+    }
+
+    /**
+     * Produces the response of a complete request on the DiskExecutor, it is appended after the previous responses
+     * of its stream when it is ready. The response of an upload is produced once its body is on disk
+     * @param stream Stream the request came on
+     * @param client_request bytes of the HTTP request, whose body may be compressed, or only its head when the
+     *                       RequestSpool of the stream wrote the body to a file
+     */
+    private void respond(Stream stream, byte[] client_request) throws IOException {
+        RequestParser request = RequestParser.parse(client_request);
+        if (request.hasHeader("Connection", "close"))
+            close_stream = Math.max(close_stream, stream.getId());
+
+        RequestSpool spool = spools.get(stream.getId());
+        RequestSpool.Upload upload = spool == null ? null : spool.poll();
+        state = ConnectionState.SENDING;
+        working.add(stream);
+        if (upload == null)
+            produce(stream, request, null);
+        else
+            upload.whenSettled(now -> produce(stream, request, upload));
+    }
+
+    /**
+     * Submits the job that produces the response of a request. When the queue of the DiskExecutor is full the
+     * response is a 503. The upload of a stream closed meanwhile is deleted
+     * @param stream Stream the request came on
+     * @param request RequestParser object of the request
+     * @param upload settled Upload of the body of the request, or null
+     */
+    private void produce(Stream stream, RequestParser request, RequestSpool.Upload upload) throws IOException {
+        if (closed || streams.get(stream.getId()) != stream) {
+            if (upload != null)
+                upload.cancel();
+            return;
+        }
+
+        DiskExecutor.Job<httpfsLibrary, OutgoingMessage> job = lib -> upload != null
+                ? lib.commitUDP_upload(request, upload) : lib.parseUDP_request(request);
+        boolean queued = disk.submit(job, loop, (response, error) -> onResponse(stream, request, response, error));
+        if (!queued) {
+            if (upload != null)
+                upload.cancel();
+            onResponse(stream, request, httpfsLib.getErrorResponse("503 Service Unavailable", "The server is busy",
+                    !request.hasHeader("Connection", "close")), null);
+        }
+    }
+
+    /**
+     * Sends a response produced on the DiskExecutor, on the loop thread, and starts the next request of its stream.
+     * The response of a stream closed meanwhile is dropped
+     * @param stream Stream the request came on
+     * @param request RequestParser object of the request
+     * @param response OutgoingMessage object of the response, null if it could not be produced
+     * @param error exception thrown while producing the response, or null
+     */
+    private void onResponse(Stream stream, RequestParser request, OutgoingMessage response, IOException error)
+            throws IOException {
+        working.remove(stream);
+        if (closed || streams.get(stream.getId()) != stream) {
+            if (response != null)
+                response.close();
+            return;
+        }
+        if (error != null) {
+            System.out.println("Error while handling the request of " + peer + ": " + error);
+            response = httpfsLib.getErrorResponse("500 Internal Server Error", "Error while handling the request",
+                    !request.hasHeader("Connection", "close"));
+        }
+
+        if (httpfsLib.isVerbose()) {
+            System.out.println("Length of doc returned to " + peer + " on stream " + stream.getId() + " " + response.length());
+            System.out.println("Disk I/O " + disk);
+        }
+        stream.send(response);
+        respondNext(stream);
+    }
+
+    /**
+     * Called when every response of a stream so far is acknowledged, or when its sender gave up
+     * @param stream Stream whose responses are delivered
+     */
+    private void onResponseComplete(Stream stream) {
+        if (stream.getSender().isPeerLost()) {
+            close();
+            return;
+        }
+
+        System.out.println("Response to " + peer + " on stream " + stream.getId() + " delivered, " + rtt + " " + cc);
+        for (Stream other : streams.values()) {
+            if (!isDone(other))
+                return;
+        }
+
+        if (isCloseRequested()) {
+            close();
+        }
+        else {
+            state = ConnectionState.ESTABLISHED;
+            loop.cancel(idle_timer);
+            idle_timer = loop.schedule(KEEP_ALIVE_TIMEOUT, this::onIdleTimer);
+        }
+    }
+
+    /**
+     * The client numbers its streams in the order of its requests, so once the request with "Connection: close"
+     * arrived, the connection is done when every stream up to that one delivered its response
+     * @return true if the connection can close
+     */
+    private boolean isCloseRequested() {
+        if (close_stream < 0)
+            return false;
+        for (int id = Stream.FIRST; id <= close_stream; id++) {
+            Stream stream = streams.get(id);
+            if (stream == null || !isDone(stream))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param stream Stream object
+     * @return true when every request of the stream received so far got its response, delivered
+     */
+    private boolean isDone(Stream stream) {
+        return stream.isComplete() && !working.contains(stream) && !stream.hasMessage();
+    }
+
+    /**
+     * @return true when only the FINs of the responses may still be unacknowledged
+     */
+    private boolean isDataAcknowledged() {
+        for (Stream stream : streams.values()) {
+            if (!stream.getSender().isDataAcknowledged())
+                return false;
+        }
+        return true;
+    }
+
+    private void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        state = ConnectionState.CLOSED;
+        loop.cancel(syn_ack_timer);
+        loop.cancel(idle_timer);
+        path.cancel();
+        cancelStreams();
+        on_close.run();
+    }
+
+    /**
+     * Stops every stream and deletes the request bodies not committed
+     */
+    private void cancelStreams() {
+        for (Stream stream : streams.values())
+            stream.cancel();
+        for (RequestSpool spool : spools.values())
+            spool.cancel();
+        streams.clear();
+        spools.clear();
+        working.clear();
+    }
+
+    /**
+     * Acknowledges a request packet with an AckPayload, carrying the cumulative ACK and SACK blocks of its stream
+     * @param stream Stream the packet came on
+     * @param seq_no sequence number of the packet received from client
+     */
+    private void send_ack(Stream stream, long seq_no) throws IOException {
+        int length = AckPayload.encode(seq_no, stream.getReceiver(), ack_payload);
+        loop.send(PacketType.ACK.getValue(), seq_no, peer_bits, peer.getPort(), stream.getId(), ack_payload, length,
+                routerAddress);
+    }
+
+    /**
+     * Creates a UDP Packet object addressed to the peer of the received packet
+     * @param packet Packet object received last from client
+     * @param payload byte array with the payload of the packet
+     * @param sequence_number long representing the next sequence number
+     * @param type int for the packet type
+     * @return Packet object
+     */
+    private Packet createPacket(Packet packet, byte[] payload, long sequence_number, int type){
+        return packet.toBuilder()
+                .setType(type)
+                .setSequenceNumber(sequence_number)
+                .setPayload(payload)
+                .create();
+    }
+}
@@ -0,0 +1,311 @@
+package UDP;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stream is one exchange of a connection, identified by the stream ID of its packets. Each direction of a stream
+ * has its own sequence numbers starting at 0: the messages of the peer are reassembled by a SelectiveRepeatReceiver
+ * and the messages to the peer go through a SelectiveRepeatSender, so a loss on one stream only delays that stream.
+ * Stream 0 carries the handshake, the client numbers its streams from 1 in the order of its requests.
+ * The messages to send wait in a queue and are segmented a window of packets at a time, when the sender runs short,
+ * so a response streamed from a file is read from disk as it goes out. With a DiskExecutor the next window of the
+ * file is read ahead on a worker while the current one is sent, and the loop never waits for the disk: a window
+ * not read yet is segmented when its bytes come back.
+ */
+public class Stream {
+
+    public static final int HANDSHAKE = 0;
+    public static final int FIRST = 1;
+
+    /**
+     * Sends the ACK of a packet of the stream, with the cumulative ACK and SACK blocks of its receiver
+     */
+    public interface AckSender {
+        void send(Stream stream, long seq_no) throws IOException;
+    }
+
+    public static final long READ_RETRY_DELAY = 10;
+
+    private final int id;
+    private final InetSocketAddress peer;
+    private final EventLoop loop;
+    private final PathMtu path;
+    private final SelectiveRepeatReceiver receiver;
+    private final DelayedAck acks;
+    private final SelectiveRepeatSender sender;
+    private final int window_size;
+    private final ArrayDeque<OutgoingMessage> pending = new ArrayDeque<>();
+    private XorParity parity;
+    private int parity_group = 0;
+    private long next_seq = 0;
+    private int messages_sent = 0;
+    private DiskExecutor<?> disk;
+    private boolean reading = false;     // a read ahead of the first pending message is running
+    private boolean cancelled = false;
+
+    /**
+     * Constructor for the Stream class.
+     * @param id stream ID
+     * @param peer address and port of the peer
+     * @param loop EventLoop object of the channel
+     * @param routerAddress address of the router the packets go through
+     * @param window_size selective-repeat window size of the messages sent
+     * @param rtt RttEstimator of the connection
+     * @param scheduler StreamScheduler of the connection
+     * @param path PathMtu of the connection, that gives the payload size
+     * @param ack_sender sends the ACKs of the packets received
+     * @param on_complete called with the stream when every message sent so far is acknowledged, and once when
+     *                    the sender gives up
+     */
+    public Stream(int id, InetSocketAddress peer, EventLoop loop, SocketAddress routerAddress, int window_size,
+                  RttEstimator rtt, StreamScheduler scheduler, PathMtu path, AckSender ack_sender,
+                  Consumer<Stream> on_complete) {
+        this.id = id;
+        this.peer = peer;
+        this.loop = loop;
+        this.path = path;
+        this.window_size = window_size;
+        this.receiver = new SelectiveRepeatReceiver(0, SelectiveRepeatReceiver.DEFAULT_WINDOW_SIZE);
+        this.acks = new DelayedAck(loop, receiver, DelayedAck.ACK_EVERY, DelayedAck.ACK_DELAY,
+                seq_no -> ack_sender.send(this, seq_no));
+        this.sender = new SelectiveRepeatSender(loop, routerAddress, new ArrayList<>(), window_size, rtt, scheduler,
+                () -> on_complete.accept(this));
+        this.sender.setSource(this::refill);
+    }
+
+    /**
+     * Gives a DATA or FIN packet of the peer to the receiver, acknowledged now or later
+     * @param packet Packet received on this stream
+     */
+    public void receive(Packet packet) throws IOException {
+        if (packet.getType() == PacketType.PARITY.getValue()) {
+            Packet rebuilt = parity == null ? null : parity.recover(packet);
+            if (rebuilt != null) {
+                System.out.println("Rebuilt Packet with Seq # :" + rebuilt.getSequenceNumber() + " on stream " + id);
+                acks.receive(rebuilt);
+            }
+            return;
+        }
+
+        if (parity != null)
+            parity.add(packet, receiver.getNextSequenceNumber());
+        acks.receive(packet);
+    }
+
+    /**
+     * Turns on the forward error correction of the stream, in both directions
+     * @param group_size number of packets per PARITY packet, 0 for none
+     */
+    public void setParityGroup(int group_size) {
+        this.parity_group = group_size;
+        this.parity = group_size > 0 ? new XorParity() : null;
+    }
+
+    /**
+     * Reads the files of the messages ahead on the workers of a DiskExecutor, instead of on the loop
+     * @param disk DiskExecutor object, or null to read them on the loop
+     */
+    public void setDiskExecutor(DiskExecutor<?> disk) {
+        this.disk = disk;
+    }
+
+    public boolean hasMessage() {
+        return receiver.hasMessage();
+    }
+
+    /**
+     * @return the oldest message of the peer completed by its FIN
+     */
+    public byte[] pollMessage() {
+        return receiver.pollMessage();
+    }
+
+    /**
+     * Queues a message after the previous messages, segmented in DATA packets of the current payload size followed
+     * by a FIN
+     * @param message bytes of the message
+     */
+    public void send(byte[] message) throws IOException {
+        send(new OutgoingMessage(message));
+    }
+
+    /**
+     * Queues a message after the previous messages, segmented in DATA packets of the current payload size followed
+     * by a FIN as the sender needs them. The message is closed once read
+     * @param message OutgoingMessage to send
+     */
+    public void send(OutgoingMessage message) throws IOException {
+        messages_sent++;
+        pending.add(message);
+        List<Packet> packets = segment();
+        sender.append(packets, parity(packets));
+    }
+
+    /**
+     * Source of the sender, gives it the next window of packets
+     */
+    private void refill() throws IOException {
+        List<Packet> packets = segment();
+        sender.add(packets, parity(packets));
+    }
+
+    /**
+     * Reads the next window of packets of the queued messages, nothing if the sender still has a window to send.
+     * A whole number of parity groups is read unless the messages end before. A message whose file cannot be
+     * read is cut short by its FIN
+     * @return DATA and FIN Packets with consecutive sequence numbers
+     */
+    private List<Packet> segment() {
+        List<Packet> packets = new ArrayList<>();
+        if (sender.getWaiting() >= window_size)
+            return packets;
+
+        // A PARITY packet has to fit in the payload size too
+        int payload_size = path.getPayloadSize() - (parity_group > 0 ? XorParity.HEADER_LEN : 0);
+        int count = parity_group > 0 ? (window_size + parity_group - 1) / parity_group * parity_group : window_size;
+        while (!pending.isEmpty() && packets.size() < count) {
+            OutgoingMessage message = pending.peek();
+            if (message.isStreamed() && disk == null)
+                readAhead(message, count * payload_size);
+            if (message.hasRemaining()) {
+                // The rest of the window is segmented when the worker has read it
+                if (!message.isReadable(payload_size))
+                    break;
+                packets.add(createPacket(PacketType.DATA.getValue(), message.read(payload_size)));
+                continue;
+            }
+            packets.add(createPacket(PacketType.FIN.getValue(), new byte[0]));
+            close(pending.poll());
+        }
+        if (disk != null && !pending.isEmpty() && pending.peek().isStreamed())
+            readAheadLater(pending.peek(), count * payload_size);
+        return packets;
+    }
+
+    /**
+     * Reads the next bytes of the file of a message on the loop, up to a window of them
+     * @param message OutgoingMessage streamed from a file
+     * @param window_bytes bytes of a window of packets
+     */
+    private void readAhead(OutgoingMessage message, int window_bytes) {
+        int count = message.claim((int) Math.max(0, window_bytes - message.getReadyBytes()));
+        if (count == 0)
+            return;
+        try {
+            message.supply(message.readAhead(count));
+        } catch (IOException e) {
+            System.out.println("Error reading the message on stream " + id + ", ending it early: " + e.getMessage());
+            message.truncate();
+        }
+    }
+
+    /**
+     * Reads the next window of the file of a message on the DiskExecutor, once fewer than a window of its bytes are
+     * read ahead. The packets of those bytes are added to the sender when they come back. When the queue of the
+     * DiskExecutor is full it tries again after READ_RETRY_DELAY
+     * @param message OutgoingMessage streamed from a file, the first pending one
+     * @param window_bytes bytes of a window of packets
+     */
+    private void readAheadLater(OutgoingMessage message, int window_bytes) {
+        if (reading || cancelled || message.getReadyBytes() >= window_bytes)
+            return;
+        int count = message.claim(window_bytes);
+        if (count == 0)
+            return;
+
+        reading = true;
+        if (!submitRead(disk, message, count)) {
+            reading = false;
+            message.unclaim(count);
+            loop.schedule(READ_RETRY_DELAY, now -> readAheadLater(message, window_bytes));
+        }
+    }
+
+    private <C> boolean submitRead(DiskExecutor<C> disk, OutgoingMessage message, int count) {
+        return disk.submit(context -> message.readAhead(count), loop, (bytes, error) -> {
+            reading = false;
+            if (cancelled)
+                return;
+            if (error != null) {
+                System.out.println("Error reading the message on stream " + id + ", ending it early: " + error.getMessage());
+                message.truncate();
+            }
+            else {
+                message.supply(bytes);
+            }
+            List<Packet> packets = segment();
+            sender.append(packets, parity(packets));
+        });
+    }
+
+    /**
+     * @param packets Packets of a window
+     * @return the PARITY Packets of the window, none without forward error correction
+     */
+    private List<Packet> parity(List<Packet> packets) {
+        return parity_group > 0 ? XorParity.encode(packets, parity_group) : new ArrayList<>();
+    }
+
+    /**
+     * @param ack ACK Packet received on this stream
+     * @param now current time in milliseconds
+     */
+    public void onAck(Packet ack, long now) throws IOException {
+        sender.onAck(ack, now);
+    }
+
+    /**
+     * @return true once at least one message was sent and every message sent is acknowledged, or the sender gave up
+     */
+    public boolean isComplete() {
+        return messages_sent > 0 && (sender.isFinished() || pending.isEmpty() && sender.isComplete());
+    }
+
+    /**
+     * Stops the retransmission and ACK delay timers of the stream and closes the messages not sent
+     */
+    public void cancel() {
+        cancelled = true;
+        sender.cancel();
+        acks.cancel();
+        while (!pending.isEmpty())
+            close(pending.poll());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public SelectiveRepeatReceiver getReceiver() {
+        return receiver;
+    }
+
+    public SelectiveRepeatSender getSender() {
+        return sender;
+    }
+
+    private static void close(OutgoingMessage message) {
+        try {
+            message.close();
+        } catch (IOException e) {
+            System.out.println("Error closing a message: " + e.getMessage());
+        }
+    }
+
+    private Packet createPacket(int type, byte[] payload) {
+        return new Packet.Builder()
+                .setType(type)
+                .setSequenceNumber(next_seq++)
+                .setPeerAddress(peer.getAddress())
+                .setPortNumber(peer.getPort())
+                .setStreamId(id)
+                .setPayload(payload)
+                .create();
+    }
+}
@@ -0,0 +1,120 @@
+package UDP;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * StreamScheduler shares the congestion window of a connection between the SelectiveRepeatSenders of its streams.
+ * The senders with packets waiting take turns, one new packet each, so a large response cannot hold back the
+ * packets of the other streams. The packets in flight and delivered are counted for the whole connection,
+ * since they are what the CongestionController measures, and its pacing rate spreads the packets of every stream.
+ * A connection with a single stream behaves exactly as a sender on its own.
+ */
+public class StreamScheduler {
+
+    private final EventLoop loop;
+    private final CongestionController cc;
+    private final ArrayDeque<SelectiveRepeatSender> ready = new ArrayDeque<>();
+    private int in_flight = 0;
+    private long delivered = 0;
+    private long delivered_time;
+    private double pace_at = 0;
+    private TimerWheel.Timer pacing_timer;
+
+    /**
+     * Constructor for the StreamScheduler class.
+     * @param loop EventLoop object of the channel, that runs the pacing timer
+     * @param cc CongestionController of the connection
+     */
+    public StreamScheduler(EventLoop loop, CongestionController cc) {
+        this.loop = loop;
+        this.cc = cc;
+        this.delivered_time = loop.now();
+    }
+
+    /**
+     * Queues a sender that has packets waiting and sends what the congestion window allows
+     * @param sender SelectiveRepeatSender of a stream
+     * @param now current time in milliseconds
+     */
+    void schedule(SelectiveRepeatSender sender, long now) throws IOException {
+        if (sender.hasWaiting() && !ready.contains(sender))
+            ready.add(sender);
+        run(now);
+    }
+
+    /**
+     * Counts a packet acknowledged, which frees its place in the congestion window
+     * @param now current time in milliseconds
+     */
+    void onAcked(long now) {
+        in_flight--;
+        delivered++;
+        delivered_time = now;
+    }
+
+    /**
+     * Forgets a sender that was cancelled, with the packets it still had in flight
+     * @param sender SelectiveRepeatSender of a stream
+     * @param unacked packets of the sender in flight
+     */
+    void remove(SelectiveRepeatSender sender, int unacked) {
+        ready.remove(sender);
+        in_flight -= unacked;
+    }
+
+    /**
+     * @return packets of every stream sent and not acknowledged yet
+     */
+    public int getInFlight() {
+        return in_flight;
+    }
+
+    /**
+     * @return packets of every stream acknowledged so far
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return time in milliseconds of the last acknowledged packet
+     */
+    public long getDeliveredTime() {
+        return delivered_time;
+    }
+
+    public CongestionController getCongestionController() {
+        return cc;
+    }
+
+    /**
+     * Sends one packet of each waiting sender in turn while the congestion window has room,
+     * as fast as the pacing rate allows
+     * @param now current time in milliseconds
+     */
+    private void run(long now) throws IOException {
+        while (!ready.isEmpty() && in_flight < cc.getCwnd()) {
+            double rate = cc.getPacingRate();
+            if (rate > 0) {
+                if (pace_at > now) {
+                    if (pacing_timer == null)
+                        pacing_timer = loop.schedule((long) Math.ceil(pace_at - now), this::onPacingTimer);
+                    return;
+                }
+                pace_at = Math.max(pace_at, now - 1) + 1 / rate;
+            }
+
+            SelectiveRepeatSender sender = ready.poll();
+            sender.sendNext(now);
+            in_flight++;
+            if (sender.hasWaiting())
+                ready.add(sender);
+        }
+    }
+
+    private void onPacingTimer(long now) throws IOException {
+        pacing_timer = null;
+        run(now);
+    }
+}
@@ -0,0 +1,184 @@
+package UDP;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimerWheel is a hashed timing wheel: timers are hashed by their deadline tick into a fixed ring of buckets,
+ * each bucket being a doubly linked list. Scheduling and cancelling a timer are O(1) whatever the number of
+ * pending timers; a timer further away than one turn of the wheel waits the needed number of rounds in its bucket.
+ * It is not thread safe, the EventLoop owning it is the only one using it.
+ */
+public class TimerWheel {
+
+    public static final long DEFAULT_TICK = 1;
+    public static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    /**
+     * Action run when a timer expires
+     */
+    public interface Task {
+        void run(long now) throws IOException;
+    }
+
+    /**
+     * Handle of a scheduled task, used to cancel it
+     */
+    public static final class Timer {
+        private final Task task;
+        private final long deadline;
+        private long rounds;
+        private int bucket;
+        private Timer prev;
+        private Timer next;
+        private boolean pending = true;
+        private boolean cancelled = false;
+
+        private Timer(Task task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+    }
+
+    private final long tick;
+    private final int mask;
+    private final Timer[] buckets;
+    private final long start;
+    private long current_tick = 0;
+    private int size = 0;
+
+    /**
+     * Constructor for the TimerWheel class.
+     * @param tick duration of one bucket in milliseconds
+     * @param wheel_size number of buckets, rounded up to a power of two
+     * @param now current time in milliseconds
+     */
+    public TimerWheel(long tick, int wheel_size, long now) {
+        int n = Integer.highestOneBit(Math.max(1, wheel_size - 1)) << 1;
+        this.tick = tick;
+        this.mask = n - 1;
+        this.buckets = new Timer[n];
+        this.start = now;
+    }
+
+    /**
+     * Schedules a task to run once the given time is reached
+     * @param deadline time in milliseconds
+     * @param task Task to run
+     * @return Timer object to cancel the task
+     */
+    public Timer schedule(long deadline, Task task) {
+        Timer timer = new Timer(task, deadline);
+
+        // A deadline in the past goes to the next bucket processed
+        long ticks = Math.max(current_tick, (deadline - start + tick - 1) / tick);
+        timer.rounds = (ticks - current_tick) / buckets.length;
+
+        timer.bucket = (int) (ticks & mask);
+        timer.next = buckets[timer.bucket];
+        if (timer.next != null)
+            timer.next.prev = timer;
+        buckets[timer.bucket] = timer;
+        size++;
+
+        return timer;
+    }
+
+    /**
+     * Removes a pending timer from its bucket, does nothing if it already ran or was cancelled
+     * @param timer Timer object
+     */
+    public void cancel(Timer timer) {
+        if (timer == null)
+            return;
+
+        // Also covers a timer expired in the same tick whose task has not run yet
+        timer.cancelled = true;
+        if (timer.pending)
+            unlink(timer);
+    }
+
+    /**
+     * Runs every task whose deadline is reached, bucket by bucket up to the current time
+     * @param now current time in milliseconds
+     */
+    public void advance(long now) throws IOException {
+        List<Timer> expired = new ArrayList<>();
+
+        while (size > 0 && start + current_tick * tick <= now) {
+            int index = (int) (current_tick & mask);
+            Timer timer = buckets[index];
+            while (timer != null) {
+                Timer next = timer.next;
+                if (timer.rounds == 0) {
+                    unlink(timer);
+                    expired.add(timer);
+                }
+                else {
+                    timer.rounds--;
+                }
+                timer = next;
+            }
+            current_tick++;
+
+            // Tasks may schedule new timers, those land in a later bucket
+            for (Timer t : expired) {
+                if (!t.cancelled)
+                    t.task.run(now);
+            }
+            expired.clear();
+        }
+
+        if (size == 0)
+            current_tick = Math.max(current_tick, (now - start) / tick);
+    }
+
+    /**
+     * Finds the first bucket holding a timer, looking at most one turn of the wheel ahead
+     * @return the time in milliseconds when advance has work to do, or Long.MAX_VALUE without timers
+     */
+    public long nextExpiry() {
+        if (size == 0)
+            return Long.MAX_VALUE;
+
+        for (int i = 0; i < buckets.length; i++) {
+            Timer timer = buckets[(int) ((current_tick + i) & mask)];
+            for (; timer != null; timer = timer.next) {
+                if (timer.rounds == 0)
+                    return start + (current_tick + i) * tick;
+            }
+        }
+        return start + (current_tick + buckets.length) * tick;
+    }
+
+    /**
+     * @return the number of pending timers
+     */
+    public int size() {
+        return size;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null)
+            timer.prev.next = timer.next;
+        else
+            buckets[timer.bucket] = timer.next;
+
+        if (timer.next != null)
+            timer.next.prev = timer.prev;
+
+        timer.prev = null;
+        timer.next = null;
+        timer.pending = false;
+        size--;
+    }
+}
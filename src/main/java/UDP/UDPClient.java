@@ -3,15 +3,9 @@ package UDP;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-import static java.nio.channels.SelectionKey.OP_READ;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class UDPClient {
@@ -20,38 +14,174 @@ public class UDPClient {
     private static InetSocketAddress clientAddress;
     private boolean connection_established = false;
     private long sequence_number;
-    private StringBuilder response = new StringBuilder();
+    private final RttEstimator rtt = new RttEstimator();
+    private final CongestionController cc = CongestionAlgorithm.DEFAULT.newController(rtt);
+    private final byte[] ack_payload = new byte[AckPayload.MAX_LEN];
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private EventLoop loop;
+    private StreamScheduler scheduler;
+    private PathMtu path;
+    private List<byte[]> requests;
+    private byte[][] responses;
+    private int responses_received = 0;
+    private Packet syn_packet;
+    private long syn_sent;
+    private int syn_retries;
+    private TimerWheel.Timer syn_timer;
+    private TimerWheel.Timer idle_timer;
+    private long last_activity;
+    private boolean fast_open = false;
+    private int parity_group = 0;
+    private boolean fast_open_sent = false;
+    private CookieJar cookie_jar;
 
     /**
      * Constructor for the UDPClient class. Sets the router and server ports.
-     * Sets the client port
+     * The client port is picked by the system so several clients can run at the same time
      */
     public UDPClient(){
         setRouter("localhost", 3000);
         setServer("localhost", 8007);
-        setClientAddress(41830);
+        setClientAddress(0);
     }
 
     /**
-     * Creates the UDP Channel connection, handshake protocol and sends the requests on behalf of the client library
+     * Creates the UDP Channel connection, handshake protocol and sends the request on behalf of the client library.
      * @param request String representing the HTTP request (post or get).
      * @param requestMethod String for the HTTP method
      */
     public void runClient(String request, String requestMethod) throws IOException {
+        runClient(Collections.singletonList(request), requestMethod);
+    }
+
+    /**
+     * Creates the UDP Channel connection, handshake protocol and sends every request at once over it, each on a
+     * Stream of its own so a large response does not hold back the others. Everything runs on the EventLoop of the
+     * channel, which returns once every response is received or the server stops answering
+     * @param requests List of Strings representing the HTTP requests (post or get).
+     * @param requestMethod String for the HTTP method
+     */
+    public void runClient(List<String> requests, String requestMethod) throws IOException {
+        List<byte[]> requestBytes = new ArrayList<>();
+        for (String request : requests)
+            requestBytes.add(request.getBytes(UTF_8));
+        runRequests(requestBytes, requestMethod);
+    }
+
+    /**
+     * Same as runClient, with requests already in bytes, such as a request with a compressed body
+     * @param requests List of the bytes of the HTTP requests (post or get).
+     * @param requestMethod String for the HTTP method
+     */
+    public void runRequests(List<byte[]> requests, String requestMethod) throws IOException {
+        if(!requestMethod.equals("get") && !requestMethod.equals("post"))
+            return;
+
+        this.requests = requests;
+        this.responses = new byte[requests.size()][];
         try(DatagramChannel channel = DatagramChannel.open()){
             channel.bind(clientAddress);
 
-            if(!connection_established)
-                handShake(channel);
-
-            if(connection_established){
-                if(requestMethod.equals("get"))
-                    send_get_request(request, channel);
+            try(EventLoop loop = new EventLoop(channel)){
+                this.loop = loop;
+                this.scheduler = new StreamScheduler(loop, cc);
+                this.path = new PathMtu(loop, routerAddress, serverAddress, rtt, Packet.MAX_PAYLOAD_LEN);
+                loop.setHandler(this::onPacket);
+                last_activity = loop.now();
+                idle_timer = loop.schedule(ServerConnection.IDLE_TIMEOUT, this::onIdleTimer);
+
+                handShake();
+                loop.run();
+                loop.cancel(idle_timer);
+            }
+        }
+    }
 
-                else if(requestMethod.equals("post"))
-                    send_post_request(request, channel);
+    /**
+     * Handles a packet received from the server, depending on the progress of the exchange
+     * @param packet Packet object received from server
+     */
+    private void onPacket(Packet packet) throws IOException {
+        long now = loop.now();
+        last_activity = now;
+        int type = packet.getType();
+
+        // Probes of the path from the server are answered at any time
+        if(type == PacketType.PROBE.getValue()) {
+            PathMtu.answer(loop, packet, routerAddress);
+            return;
+        }
+        if(type == PacketType.PROBE_ACK.getValue()) {
+            path.onProbeAck(packet);
+            return;
+        }
 
+        //Handshake step 3
+        if(type == PacketType.SYN_ACK.getValue()) {
+            if(!connection_established) {
+                loop.cancel(syn_timer);
+                if(syn_retries == 0)
+                    rtt.sample(now - syn_sent);
+
+                HandshakeOptions options = HandshakeOptions.parse(packet.getPayload());
+                System.out.println("Server SYN_ACK options : " + options);
+                if(options.has(HandshakeOptions.COOKIE))
+                    cookie_jar.put(serverAddress, options.get(HandshakeOptions.COOKIE));
+                if(options.has(HandshakeOptions.MAX_PAYLOAD)) {
+                    path = new PathMtu(loop, routerAddress, serverAddress, rtt,
+                            options.getInt(HandshakeOptions.MAX_PAYLOAD, Packet.MAX_PAYLOAD_LEN));
+                    path.start();
+                }
+                if(!options.has(HandshakeOptions.PARITY))
+                    parity_group = 0;
+
+                if(fast_open_sent && options.has(HandshakeOptions.FAST_OPEN_ACCEPTED)) {
+                    acceptFastOpen();
+                }
+                else {
+                    connection_established = true;
+                    sequence_number = packet.getSequenceNumber() + 1;
+                    ack_packet(Stream.HANDSHAKE, packet.getSequenceNumber(), null);
+                    send_requests(0);
+                }
             }
+            // The server did not get our ACK
+            else if(!streams.isEmpty()) {
+                ack_packet(Stream.HANDSHAKE, packet.getSequenceNumber(), null);
+            }
+        }
+        // The SYN_ACK of a fast open was lost but the response arrives
+        else if(!connection_established && fast_open_sent && isStreamPacket(type)) {
+            loop.cancel(syn_timer);
+            acceptFastOpen();
+            onPacket(packet);
+            return;
+        }
+        else if(!connection_established) {
+            return;
+        }
+        else if(type == PacketType.ACK.getValue()) {
+            Stream stream = streams.get(packet.getStreamId());
+            if(stream != null)
+                stream.onAck(packet, now);
+        }
+        else if(isStreamPacket(type)) {
+            Stream stream = streams.get(packet.getStreamId());
+            if(stream == null)
+                return;
+            stream.receive(packet);
+
+            // The response of a request comes on the stream of the request
+            while(stream.hasMessage()) {
+                byte[] message = stream.pollMessage();
+                int index = stream.getId() - Stream.FIRST;
+                if(responses[index] == null) {
+                    responses[index] = message;
+                    responses_received++;
+                }
+            }
+            if(responses_received >= requests.size())
+                loop.stop();
         }
     }
 
@@ -73,6 +203,33 @@ public class UDPClient {
         serverAddress = new InetSocketAddress(serverHost, serverPort);
     }
 
+    /**
+     * Enables fast open: with a cookie from a previous connection to the server, a request that fits in one
+     * packet is sent in the SYN, otherwise the SYN asks the server for a cookie
+     * @param fast_open true to enable fast open
+     */
+    public void setFastOpen(boolean fast_open){
+        this.fast_open = fast_open;
+    }
+
+    /**
+     * Asks the server for forward error correction: every group_size packets of a stream, in both directions,
+     * are followed by a PARITY packet that rebuilds one of them if it is lost
+     * @param group_size number of packets per PARITY packet, 0 for none
+     */
+    public void setParityGroup(int group_size){
+        this.parity_group = Math.min(group_size, XorParity.MAX_GROUP_SIZE);
+    }
+
+    /**
+     * @param type type of a packet
+     * @return true for the packets that belong to a stream: DATA, FIN and PARITY
+     */
+    private static boolean isStreamPacket(int type){
+        return type == PacketType.DATA.getValue() || type == PacketType.FIN.getValue()
+                || type == PacketType.PARITY.getValue();
+    }
+
     /**
      * Sets the client port
      * @param clientPort String representing the client port
@@ -82,201 +239,199 @@ public class UDPClient {
     }
 
     /**
-     * Creates a UDP Packet object
-     * @param message String the message or payload of the packet
+     * Creates a UDP Packet object carrying raw bytes
+     * @param payload byte array with the payload of the packet
      * @param type type of packet
      * @return Packet object
      */
-    private Packet createPacket(String message, int type){
+    private Packet createPacket(byte[] payload, int type){
         Packet p = new Packet.Builder()
                 .setType(type)
                 .setSequenceNumber(sequence_number)
                 .setPortNumber(serverAddress.getPort())
                 .setPeerAddress(serverAddress.getAddress())
-                .setPayload(message.getBytes())
+                .setPayload(payload)
                 .create();
         return p;
     }
 
     /**
-     * Receives a Datagram Bytebuffer and returns a new Packet
-     * @param channel DatagramChannel object
-     * @return Packet object
+     * simulation of 3-way handshake similar to TCP protocol, the SYN is sent again until the SYN_ACK arrives
      */
-    private Packet receivePacket(DatagramChannel channel) throws IOException{
+    private void handShake() throws IOException {
+
+        System.out.println("\n---------Establishing connection with server through 3-way handshake---------\n");
 
-        channel.configureBlocking(true);
-        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_LEN).order(ByteOrder.BIG_ENDIAN);
-        buf.clear();
-        channel.receive(buf);
+        //Handshake step 1
+
+        sequence_number = 1L;
 
-        // Parse a packet from the received raw data.
-        buf.flip();
-        Packet packet = Packet.fromBuffer(buf);
-        buf.flip();
+        HandshakeOptions options = new HandshakeOptions().putInt(HandshakeOptions.MAX_PAYLOAD, PathMtu.MAX_PAYLOAD_LEN);
+        if(parity_group > 0)
+            options.put(HandshakeOptions.PARITY, new byte[]{(byte) parity_group});
+        if(fast_open) {
+            cookie_jar = CookieJar.load();
+            byte[] cookie = cookie_jar.get(serverAddress);
+            byte[] requestBytes = requests.get(0);
+            if(cookie != null) {
+                options.put(HandshakeOptions.COOKIE, cookie);
+                options.put(HandshakeOptions.FAST_OPEN_DATA, requestBytes);
+                fast_open_sent = options.length() <= Packet.MAX_PAYLOAD_LEN;
+                if(!fast_open_sent) {
+                    options = new HandshakeOptions().putInt(HandshakeOptions.MAX_PAYLOAD, PathMtu.MAX_PAYLOAD_LEN)
+                            .put(HandshakeOptions.COOKIE, cookie);
+                    if(parity_group > 0)
+                        options.put(HandshakeOptions.PARITY, new byte[]{(byte) parity_group});
+                }
+            }
+            else {
+                options.put(HandshakeOptions.COOKIE_REQUEST);
+            }
+        }
 
-        sequence_number++;
-        return packet;
+        syn_packet = createPacket(options.encode(), PacketType.SYN.getValue());
+
+        System.out.println("Sending SYN message with sequence number " + sequence_number + " and options " + options);
+        syn_sent = loop.now();
+        send_syn();
+    }
+
+    private void send_syn() throws IOException {
+        loop.send(syn_packet, routerAddress);
+        syn_timer = loop.schedule(rtt.getRto(), this::onSynTimer);
     }
 
     /**
-     * Segments the payload into chunks of 1013 bytes each
-     * @param response HTTP response message
-     * @param payload_size size of the response
-     * @return List<byte[]> a list of byte objects representing each Packet's payload
+     * Retransmission timer of the SYN
+     * @param now current time in milliseconds
      */
-    public static List<byte[]> getPayloads(byte[] response, int payload_size) {
-
-        List<byte[]> payloads = new ArrayList<byte[]>();
-        int offset = 0;
-
-        while (offset < response.length) {
-            int end = Math.min(response.length, offset + payload_size);
-            payloads.add(Arrays.copyOfRange(response, offset, end));
-            offset += payload_size;
+    private void onSynTimer(long now) throws IOException {
+        if(connection_established)
+            return;
+
+        if(syn_retries >= SelectiveRepeatSender.MAX_RETRIES) {
+            System.out.println("\n---------Connection failed---------\n\n");
+            loop.stop();
+            return;
         }
-
-        return payloads;
+        syn_retries++;
+        rtt.backoff();
+        send_syn();
     }
 
     /**
-     * simulation of 3-way handshake similar to TCP protocol
-     * @param channel DatagramChannel object
+     * Idle timer, stops the client when the server has not sent anything for too long
+     * @param now current time in milliseconds
      */
-    private void handShake(DatagramChannel channel) throws IOException {
-
-        System.out.println("\n---------Establishing connection with server through 3-way handshake---------\n");
-
-        //Handshake step 1
-
-        String helloMessage = "Hi S";
-        sequence_number = 1L;
-
-        Packet packet1 = createPacket(helloMessage, PacketType.SYN.getValue());
-
-        System.out.println("Sending SYN message with sequence number " + sequence_number);
-        //channel.send(packet1.toBuffer(), routerAddress);
-        sends(channel, packet1);
-
-        Packet server_packet = receivePacket(channel);
-        //Handshake step 3
-        if(server_packet.getType() == PacketType.SYN_ACK.getValue()) {
-            String payload = new String(server_packet.getPayload(), UTF_8);
-            System.out.println("Server SYN_ACK response : " + payload);
-            connection_established = true;
-            sequence_number = server_packet.getSequenceNumber() + 1;
-            ack_packet(server_packet.getSequenceNumber(), channel);
+    private void onIdleTimer(long now) {
+        long idle = now - last_activity;
+        if(idle >= ServerConnection.IDLE_TIMEOUT) {
+            System.out.println("\n---------Server is not responding---------\n\n");
+            loop.stop();
+        }
+        else {
+            idle_timer = loop.schedule(ServerConnection.IDLE_TIMEOUT - idle, this::onIdleTimer);
         }
     }
 
     /**
      * Creates an ACK packet for the received packet and sends it to UDP Server
+     * @param stream_id stream of the received packet
      * @param seq_no sequence number of the received packet
-     * @param channel DatagramChannel object
+     * @param receiver SelectiveRepeatReceiver that got the packet, for the cumulative ACK and SACK blocks,
+     *                 or null for the SYN_ACK
      */
-    private void ack_packet(long seq_no, DatagramChannel channel) throws IOException {
-        System.out.println(" \nSeq # of received packet : " + seq_no);
-        Packet ack_packet = createPacket(String.valueOf(seq_no), PacketType.ACK.getValue());
-        channel.send(ack_packet.toBuffer(), routerAddress);
+    private void ack_packet(int stream_id, long seq_no, SelectiveRepeatReceiver receiver) throws IOException {
+        System.out.println(" \nSeq # of received packet : " + seq_no + " on stream " + stream_id);
+        int length = AckPayload.encode(seq_no, receiver, ack_payload);
+        loop.send(PacketType.ACK.getValue(), sequence_number, PacketView.toBits(serverAddress.getAddress()),
+                serverAddress.getPort(), stream_id, ack_payload, length, routerAddress);
     }
 
     /**
-     * Sends a Packet with Selector timer, recursively sends after timeout
-     * @param packet Packet to be sent
-     * @param channel DatagramChannel object
+     * The server accepted the request sent in the SYN, its response comes on the first stream
+     * and the other requests follow as if the handshake ACK had been sent
      */
-    private void sends(DatagramChannel channel, Packet packet) throws IOException{
-        channel.send(packet.toBuffer(), routerAddress);
-        channel.configureBlocking(false);
-        Selector selector = Selector.open();
-        channel.register(selector, OP_READ);
-        selector.select(1000);
-
-        Set<SelectionKey> keys = selector.selectedKeys();
-        if (keys.isEmpty()) {
-            sends(channel,packet);
-        }
+    private void acceptFastOpen() throws IOException {
+        System.out.println("\n---------Fast open accepted, request sent in the SYN---------\n");
+        connection_established = true;
+        sequence_number = syn_packet.getSequenceNumber() + 2;
+        send_requests(1);
+    }
 
-        selector.close();
-        keys.clear();
-        return;
+    /**
+     * @return the current retransmission timeout of the connection in milliseconds
+     */
+    public long getRto(){
+        return rtt.getRto();
     }
 
     /**
      * Gets the HTTP response data from Server
-     * @return HTTP response string
+     * @return HTTP response string of the first request, empty if it did not arrive
      */
     public String get_response(){
-        return this.response.toString();
+        return responses == null || responses[0] == null ? "" : new String(responses[0], UTF_8);
     }
 
     /**
-     * Sends the get request Packets to Server
-     * @param request string representing the HTTP Request
-     * @param channel DatagramChannel object
+     * @return HTTP responses received, in the order of the requests
      */
-    private void send_get_request(String request, DatagramChannel channel) throws IOException {
-        sequence_number++;
-        Packet p = createPacket(request, PacketType.DATA.getValue());
-        //channel.send(p.toBuffer(), routerAddress);
-        sends(channel,p);
-        Packet resp = receivePacket(channel);
-
-        while(resp.getType() != PacketType.FIN.getValue()){
-            String server_response = new String(resp.getPayload(), UTF_8);
-            response.append(server_response);
-            ack_packet(resp.getSequenceNumber(), channel);
-            resp = receivePacket(channel);
-        }
+    public List<String> get_responses(){
+        List<String> received = new ArrayList<>();
+        for (byte[] response : get_response_bytes())
+            received.add(new String(response, UTF_8));
+        return received;
     }
 
     /**
-     * Sends the post request Packets to Server
-     * @param request string representing the HTTP Request
-     * @param channel DatagramChannel object
+     * @param index index of a request
+     * @return bytes of its response received in order before the connection stopped, or null if the response
+     * is complete or nothing arrived
      */
-    private void send_post_request(String request, DatagramChannel channel) throws IOException {
-        sequence_number++;
-        byte[] responseBytes = request.getBytes(UTF_8);
-        System.out.println("Length of Post message " + responseBytes.length);
-
-        if(request.getBytes().length <= (Packet.MAX_LEN-11)) {
-            Packet resp = createPacket(request, PacketType.DATA.getValue());
-            System.out.println("\nSending Packet with Seq # :" + resp.getSequenceNumber());
-            channel.send(resp.toBuffer(), routerAddress);
-            Packet new_packet = receivePacket(channel);
-            if(new_packet.getType() == PacketType.ACK.getValue())
-                System.out.println(" \nSeq # of received packet : " + new_packet.getSequenceNumber());
-
-            sequence_number++;
-            Packet fin_packet = createPacket("", PacketType.FIN.getValue());
-            channel.send(fin_packet.toBuffer(), routerAddress);
-        }
-
-        else{
-            List<byte[]> payloads = getPayloads(responseBytes, (Packet.MAX_LEN-11));
-
-            for (byte[] payload : payloads) {
-                String payload_data = new String(payload, UTF_8);
-                Packet resp = createPacket(payload_data, PacketType.DATA.getValue());
-                System.out.println("\nSending Packet with Seq # :" + resp.getSequenceNumber());
-                channel.send(resp.toBuffer(), routerAddress);
-
-                Packet new_packet = receivePacket(channel);
-                if(new_packet.getType() == PacketType.ACK.getValue())
-                    System.out.println(" \nSeq # of received packet : " + new_packet.getSequenceNumber());
+    public byte[] get_partial_response(int index){
+        Stream stream = streams.get(Stream.FIRST + index);
+        if (responses == null || responses[index] != null || stream == null)
+            return null;
+        return stream.getReceiver().getPartialMessage();
+    }
 
-                sequence_number++;
-            }
+    /**
+     * @return bytes of the HTTP responses received, in the order of the requests, the bodies as the server sent them
+     */
+    public List<byte[]> get_response_bytes(){
+        List<byte[]> received = new ArrayList<>();
+        for (byte[] response : responses) {
+            if (response != null)
+                received.add(response);
+        }
+        return received;
+    }
 
-            Packet fin_packet = createPacket("", PacketType.FIN.getValue());
-            channel.send(fin_packet.toBuffer(), routerAddress);
+    /**
+     * Opens one Stream per request, numbered in the order of the requests, and sends the request Packets on them,
+     * each request terminated by a FIN. The streams share the congestion window in turns and the responses are
+     * reassembled by onPacket
+     * @param first index of the first request to send, the ones before it were sent in the SYN
+     */
+    private void send_requests(int first) throws IOException {
+        for (int i = 0; i < requests.size(); i++) {
+            Stream stream = new Stream(Stream.FIRST + i, serverAddress, loop, routerAddress,
+                    SelectiveRepeatSender.DEFAULT_WINDOW_SIZE, rtt, scheduler, path,
+                    (s, seq_no) -> ack_packet(s.getId(), seq_no, s.getReceiver()), s -> {
+                if(s.getSender().isPeerLost()) {
+                    System.out.println("\n---------Server is not responding---------\n\n");
+                    loop.stop();
+                }
+            });
+            stream.setParityGroup(parity_group);
+            streams.put(stream.getId(), stream);
         }
 
-        Packet response_packet = receivePacket(channel);
-        String server_response = new String(response_packet.getPayload(), UTF_8);
-        response.append(server_response);
-        ack_packet(response_packet.getSequenceNumber(), channel);
+        for (int i = first; i < requests.size(); i++) {
+            byte[] requestBytes = requests.get(i);
+            System.out.println("Length of request message " + requestBytes.length + " on stream " + (Stream.FIRST + i));
+            streams.get(Stream.FIRST + i).send(requestBytes);
+        }
     }
 }
-
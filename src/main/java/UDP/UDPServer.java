@@ -6,281 +6,213 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
 import java.util.*;
-
-import static java.nio.channels.SelectionKey.OP_READ;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.Arrays.asList;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UDPServer serves the requests of every client on the server port. One DatagramChannel receives every packet and
+ * its EventLoop hands each one to the connection of its peer, on one thread: the kernel picks the socket of a
+ * datagram by its source address, and every client reaches the server through the router, so more channels on the
+ * port would not spread the reads. The file system work of the requests runs on the DiskExecutor.
+ * With virtual threads, one reader thread receives every packet of the port instead and puts it in the mailbox of
+ * the EventLoop of its connection, and each connection runs on a thread of its own, blocking on its mailbox between
+ * packets and timers. On Java 21 and later these are virtual threads, so thousands of clients cost thousands of
+ * small stacks rather than thousands of system threads; earlier versions use a platform thread per connection.
+ */
 public class UDPServer {
-    private static SocketAddress routerAddress;
+    // Packet buffers of the EventLoop of a connection served on its own thread, which only sends
+    private static final int CONNECTION_BUFFERS = 4;
+
     private static InetSocketAddress serverAddress;
-    private static InetSocketAddress clientAddress;
-    private boolean connection_established = false;
-    private StringBuilder entity_body = new StringBuilder();
-    private Path root = Paths.get("").toAbsolutePath();  //default system current dir
-    private boolean post_request = false;
+    private int window_size = SelectiveRepeatSender.DEFAULT_WINDOW_SIZE;
+    private CongestionAlgorithm congestion = CongestionAlgorithm.DEFAULT;
+    private boolean virtual_threads = false;
+    private final FastOpenCookies cookies = new FastOpenCookies();
+    private final Map<InetSocketAddress, ServerConnection> connections = new HashMap<>();
 
     /**
-     * Listens for new incoming packets from the channel, performs handshake protocol.
-     * Based on HTTP request method, performs the Server operations
+     * Listens for new incoming packets from the channel and hands each one to the connection of its peer.
+     * The EventLoop of the channel also runs the timers of every connection, and the DiskExecutor the file system
+     * work of the requests
      * @param args Array of arguments from terminal when executing the httfps
      */
     public void listenAndServe(String[] args) throws IOException {
 
         httpfsLibrary httpfsLib = new httpfsLibrary(args);
 
-        try (DatagramChannel channel = DatagramChannel.open()) {
-            channel.bind(serverAddress);
-            System.out.println("Server is listening at " + channel.getLocalAddress());
-            ByteBuffer buf = ByteBuffer
-                    .allocate(Packet.MAX_LEN)
-                    .order(ByteOrder.BIG_ENDIAN);
-
-            for (; ; ) {
-                Packet packet = receivePacket(buf, channel);
-
-                if(packet.getType() == PacketType.SYN.getValue()) {
-                    handShake(packet ,channel);
-                }
-                else if(connection_established){
-                    String client_request = new String(packet.getPayload(), UTF_8);
-                    if (client_request.startsWith("GET")) {
-                        String response = httpfsLib.parseUDP_request(client_request);
-                        processGetResponse(packet, response, channel, buf);
-                    }
-
-                    else if(client_request.startsWith("POST")){
-                        post_request = true;
-                        processPostResponse(client_request, packet, channel);
-                    }
-
-                    else if(post_request){
-                        if(packet.getType() == PacketType.FIN.getValue()){
-                            String response = httpfsLib.parseUDP_request(entity_body.toString());
-                            sendPostResponse(packet, response, channel, buf);
-                            post_request = false;
-                        }
-
-                        else
-                            processPostResponse(client_request, packet, channel);
-                    }
-
+        try (DiskExecutor<httpfsLibrary> disk = new DiskExecutor<>(DiskExecutor.DEFAULT_WORKERS,
+                DiskExecutor.DEFAULT_CAPACITY, () -> new httpfsLibrary(httpfsLib))) {
+            if (virtual_threads) {
+                serveConnectionThreads(httpfsLib, disk);
+                return;
+            }
+            try (DatagramChannel channel = DatagramChannel.open()) {
+                channel.bind(serverAddress);
+                System.out.println("Server is listening at " + channel.getLocalAddress());
 
+                try (EventLoop loop = new EventLoop(channel)) {
+                    loop.setHandler(packet -> dispatch(packet, loop, httpfsLib, disk));
+                    loop.run();
                 }
-
             }
         }
     }
 
     /**
-     * Creates the packets for the Get HTTP response and sends to client
-     * @param packet Packet object received last from client
-     * @param response String representing the HTTP response
-     * @param channel DatagramChannel object
-     * @param buf ByteBuffer object
+     * Gives the packet to the connection of its peer. Only a SYN can open a new connection
+     * @param packet Packet object received from client
+     * @param loop EventLoop object of the channel
+     * @param httpfsLib httpfsLibrary object of the loop thread
+     * @param disk DiskExecutor object that produces the HTTP responses
      */
-    public void processGetResponse(Packet packet, String response, DatagramChannel channel, ByteBuffer buf) throws IOException {
-        byte[] responseBytes = response.getBytes(UTF_8);
-        System.out.println("Length of doc returned " + responseBytes.length);
-
-        if(response.getBytes().length <= (Packet.MAX_LEN-11)) {
-            Packet resp = createPacket(packet, response, packet.getSequenceNumber()+1, PacketType.DATA.getValue());
-            System.out.println("\nSending Packet with Seq # :" + resp.getSequenceNumber());
-            channel.send(resp.toBuffer(), routerAddress);
-            Packet new_packet = receivePacket(buf, channel);
-            if(new_packet.getType() == PacketType.ACK.getValue())
-                ack_packet(new_packet);
-
-            Packet fin_packet = createPacket(packet, "", new_packet.getSequenceNumber()+1, PacketType.FIN.getValue());
-            channel.send(fin_packet.toBuffer(), routerAddress);
-        }
+    private void dispatch(Packet packet, EventLoop loop, httpfsLibrary httpfsLib, DiskExecutor<httpfsLibrary> disk)
+            throws IOException {
+        SocketAddress routerAddress = loop.getSourceAddress();
+        System.out.println("Receiving client packet with Seq # : " + packet.getSequenceNumber());
 
-        else{
-            List<byte[]> payloads = getPayloads(responseBytes, (Packet.MAX_LEN-11));
-            long seq_no = packet.getSequenceNumber()+1;
+        InetSocketAddress peer = new InetSocketAddress(packet.getPeerAddress(), packet.getPeerPort());
+        ServerConnection connection = connections.get(peer);
 
-            for (byte[] payload : payloads) {
-                String payload_data = new String(payload, UTF_8);
-                Packet resp = createPacket(packet, payload_data, seq_no, PacketType.DATA.getValue());
-                channel.send(resp.toBuffer(), routerAddress);
-                Packet new_packet = receivePacket(buf, channel);
-                if(new_packet.getType() == PacketType.ACK.getValue())
-                    ack_packet(new_packet);
-                seq_no = new_packet.getSequenceNumber()+1;
-            }
+        if (connection == null) {
+            if (packet.getType() != PacketType.SYN.getValue())
+                return;
 
-            Packet fin_packet = createPacket(packet, "", seq_no, PacketType.FIN.getValue());
-            channel.send(fin_packet.toBuffer(), routerAddress);
+            connection = new ServerConnection(peer, loop, routerAddress, httpfsLib, disk, window_size, congestion,
+                    cookies, () -> connections.remove(peer));
+            connections.put(peer, connection);
         }
-        connection_established = false;
-    }
 
-    /**
-     * Creates each ACK packet to indicate that the post packet is received
-     * @param packet Packet object received last from client
-     * @param client_request String representing the HTTP client request
-     * @param channel DatagramChannel object
-     */
-    public void processPostResponse(String client_request, Packet packet, DatagramChannel channel) throws IOException {
-        entity_body.append(client_request);
-        Packet ack_packet = createPacket(packet, "", packet.getSequenceNumber()+1, PacketType.ACK.getValue());
-        System.out.println("\nSending Packet with Seq # :" + ack_packet.getSequenceNumber());
-        channel.send(ack_packet.toBuffer(), routerAddress);
+        connection.onPacket(packet, loop.now());
     }
 
     /**
-     * Sends the HTTP Server response to Post request
-     * @param packet Packet object received last from client
-     * @param response String representing the HTTP response
-     * @param channel DatagramChannel object
-     * @param buf ByteBuffer object
+     * Receives every packet of the server port on this thread and puts it in the mailbox of its connection.
+     * A SYN from a new peer starts the connection on a thread of its own, which runs the EventLoop of the connection
+     * until it closes
+     * @param httpfsLib httpfsLibrary object the settings and caches of the connections come from
+     * @param disk DiskExecutor object that produces the HTTP responses
      */
-    private void sendPostResponse(Packet packet, String response, DatagramChannel channel, ByteBuffer buf) throws IOException {
-        Packet resp = createPacket(packet, response, packet.getSequenceNumber()+1, PacketType.DATA.getValue());
-        System.out.println("\nSending Packet with Seq # :" + resp.getSequenceNumber());
-        channel.send(resp.toBuffer(), routerAddress);
-        Packet new_packet = receivePacket(buf, channel);
-        if(new_packet.getType() == PacketType.ACK.getValue())
-            ack_packet(new_packet);
-    }
+    private void serveConnectionThreads(httpfsLibrary httpfsLib, DiskExecutor<httpfsLibrary> disk) throws IOException {
+        ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(Packet.MAX_JUMBO_LEN).order(ByteOrder.BIG_ENDIAN);
+        PacketView view = new PacketView();
 
-    /**
-     * Segments the payload into chunks of 1013 bytes each
-     * @param response HTTP response message
-     * @param payload_size size of the response
-     * @return List<byte[]> a list of byte objects representing each Packet's payload
-     */
-    public static List<byte[]> getPayloads(byte[] response, int payload_size) {
-
-        List<byte[]> payloads = new ArrayList<byte[]>();
-        int offset = 0;
-
-        while (offset < response.length) {
-            int end = Math.min(response.length, offset + payload_size);
-            payloads.add(Arrays.copyOfRange(response, offset, end));
-            offset += payload_size;
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(serverAddress);
+            ConnectionRouter router = new ConnectionRouter(channel, httpfsLib, disk);
+            System.out.println("Server is listening at " + channel.getLocalAddress() + " with a " + router.starter
+                    + " per connection");
+
+            for (;;) {
+                receiveBuffer.clear();
+                SocketAddress routerAddress = channel.receive(receiveBuffer);
+                receiveBuffer.flip();
+                view.wrap(receiveBuffer);
+                if (!view.isValid()) {
+                    System.out.println("Dropping invalid datagram from " + routerAddress);
+                    continue;
+                }
+                Packet packet = view.toPacket();
+                System.out.println("Receiving client packet with Seq # : " + packet.getSequenceNumber());
+                router.route(packet, routerAddress);
+            }
         }
-
-        return payloads;
     }
 
     /**
-     * simulation of 3-way handshake similar to TCP protocol
-     * @param channel DatagramChannel object
-     * @param packet Packet object received last from client
+     * The EventLoops of the connections served on threads of their own, by peer. A loop leaves the map before it
+     * stops, and the packets it was given but did not handle are routed again, so a SYN that arrives as a
+     * connection closes opens the next one
      */
-    private void handShake(Packet packet, DatagramChannel channel) throws IOException {
-
-        //Handshake step 2
-        System.out.println("\n---------Establishing connection with client through 3-way handshake---------\n");
-        String payload = new String(packet.getPayload(), UTF_8);
-        System.out.println("Client message : " + payload);
-
-        String responseMessage = ("Hi");
-        long seq_no = packet.getSequenceNumber() + 1;
-        Packet syn_ack_response = createPacket(packet, responseMessage, seq_no, PacketType.SYN_ACK.getValue());
-        System.out.println("Sending SYN_ACK message: Hi and Seq # :" + seq_no);
-        //channel.send(syn_ack_response.toBuffer(), routerAddress);
-        ByteBuffer buf = ByteBuffer
-                .allocate(Packet.MAX_LEN)
-                .order(ByteOrder.BIG_ENDIAN);
-
-        // Send SYN_ACK packet to the client.
-        sends(channel, syn_ack_response);
-        Packet ack_packet = receivePacket(buf, channel);
-
-        if(ack_packet.getType() == PacketType.ACK.getValue()) {
-            ack_packet(ack_packet);
-            connection_established = true;
-            System.out.println("\n---------Connection with client established---------\n\n");
-        }
-        else if(ack_packet.getType() == PacketType.DATA.getValue()){
-            System.out.println("\n---------Connection failed---------\n\n");
-            System.exit(0);
+    private class ConnectionRouter {
+        private final DatagramChannel channel;
+        private final httpfsLibrary httpfsLib;
+        private final DiskExecutor<httpfsLibrary> disk;
+        private final ConnectionThreads starter = new ConnectionThreads();
+        private final Map<InetSocketAddress, EventLoop> connections = new ConcurrentHashMap<>();
+
+        ConnectionRouter(DatagramChannel channel, httpfsLibrary httpfsLib, DiskExecutor<httpfsLibrary> disk) {
+            this.channel = channel;
+            this.httpfsLib = httpfsLib;
+            this.disk = disk;
         }
 
-    }
+        /**
+         * Gives a packet to the loop of its connection. Only a SYN can open a new connection, atomically with the
+         * lookup, and a loop found stopped is replaced
+         * @param packet Packet object received from client
+         * @param routerAddress address the packet came from
+         */
+        void route(Packet packet, SocketAddress routerAddress) {
+            InetSocketAddress peer = new InetSocketAddress(packet.getPeerAddress(), packet.getPeerPort());
+            boolean syn = packet.getType() == PacketType.SYN.getValue();
+            for (;;) {
+                EventLoop loop = syn
+                        ? connections.computeIfAbsent(peer, key -> open(peer, routerAddress))
+                        : connections.get(peer);
+                if (loop == null || loop.deliver(packet))
+                    return;
+                connections.remove(peer, loop);
+            }
+        }
 
-    /**
-     * Creates an ACK packet for the received packet and sends it to UDP Client
-     * @param client_packet Packet object received from client
-     */
-    private void ack_packet(Packet client_packet) throws IOException {
-        String ack_payload = new String(client_packet.getPayload(), UTF_8);
-        System.out.println("Client ACK # : " + ack_payload);
+        /**
+         * Creates the connection of a peer and starts its thread
+         * @param peer address and port of the client
+         * @param routerAddress address of the router the client packets come from
+         * @return the EventLoop of the connection
+         */
+        private EventLoop open(InetSocketAddress peer, SocketAddress routerAddress) {
+            EventLoop loop = new EventLoop(channel, CONNECTION_BUFFERS);
+            ServerConnection connection = new ServerConnection(peer, loop, routerAddress, new httpfsLibrary(httpfsLib),
+                    disk, window_size, congestion, cookies, () -> {
+                        connections.remove(peer, loop);
+                        loop.stop();
+                    });
+            loop.setHandler(packet -> connection.onPacket(packet, loop.now()));
+            starter.start(() -> {
+                try {
+                    loop.run();
+                } catch (IOException e) {
+                    System.out.println("Connection of " + peer + " stopped: " + e.getMessage());
+                    connections.remove(peer, loop);
+                }
+                for (Packet packet : loop.getUndelivered())
+                    route(packet, routerAddress);
+            }, "httpfs-" + peer);
+            return loop;
+        }
     }
 
     /**
-     * Creates a UDP Packet object
-     * @param message String the message or payload of the packet
-     * @param type type of packet
-     * @param sequence_number long representing the next sequence number
-     * @param type int for the packet type
-     * @return Packet object
+     * Sets the UDP server port
+     * @param serverPort server port
      */
-    private Packet createPacket(Packet packet, String message, long sequence_number, int type){
-        Packet p = packet.toBuilder()
-                .setType(type)
-                .setSequenceNumber(sequence_number)
-                .setPayload(message.getBytes())
-                .create();
-        return p;
+    public void setServer(int serverPort){
+        serverAddress = new InetSocketAddress(serverPort);
     }
 
     /**
-     * Sends a Packet with Selector timer, recursively sends after timeout
-     * @param packet Packet to be sent
-     * @param channel DatagramChannel object
+     * Sets the number of response packets that can be in flight without being acknowledged
+     * @param window_size selective-repeat window size
      */
-    private void sends(DatagramChannel channel, Packet packet) throws IOException{
-        channel.send(packet.toBuffer(), routerAddress);
-        channel.configureBlocking(false);
-        Selector selector = Selector.open();
-        channel.register(selector, OP_READ);
-        selector.select(1000);
-
-        Set<SelectionKey> keys = selector.selectedKeys();
-        if (keys.isEmpty()) {
-            sends(channel,packet);
-        }
-
-        selector.close();
-        keys.clear();
-        return;
+    public void setWindowSize(int window_size){
+        this.window_size = window_size;
     }
 
     /**
-     * Receives a Datagram Bytebuffer and returns a new Packet
-     * @param channel DatagramChannel object
-     * @param buf ByteBuffer object
-     * @return Packet object
+     * Serves each connection on a thread of its own, a virtual thread on Java 21 and later, fed by one reader
+     * thread
+     * @param virtual_threads true to run a thread per connection
      */
-    private Packet receivePacket(ByteBuffer buf, DatagramChannel channel) throws IOException{
-
-        channel.configureBlocking(true);
-        buf.clear();
-        routerAddress = channel.receive(buf);
-
-        // Parse a packet from the received raw data.
-        buf.flip();
-        Packet packet = Packet.fromBuffer(buf);
-        buf.flip();
-
-        System.out.println("Receiving client packet with Seq # : " + packet.getSequenceNumber());
-
-        return packet;
+    public void setVirtualThreads(boolean virtual_threads){
+        this.virtual_threads = virtual_threads;
     }
 
     /**
-     * Sets the UDP server port
-     * @param serverPort server port
+     * Sets the congestion control algorithm of the responses
+     * @param congestion CongestionAlgorithm object
      */
-    public void setServer(int serverPort){
-        serverAddress = new InetSocketAddress(serverPort);
+    public void setCongestionControl(CongestionAlgorithm congestion){
+        this.congestion = congestion;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package UDP;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * XorParity is the forward error correction of a stream. The sender follows each group of up to group_size
+ * consecutive DATA and FIN packets of a message with a PARITY packet, the XOR of the group, so the receiver can
+ * rebuild any single packet of the group that was lost without waiting for its retransmission.
+ * The PARITY packet carries the first sequence number of the group and, in BigEndian, the payload:
+ * count (1 byte) | XOR of the types (1) | XOR of the payload lengths (2) | XOR of the payloads padded to the longest.
+ * Parity packets are sent once and never acknowledged. On the receiving side an XorParity object keeps the packets
+ * of the groups that may still need a repair.
+ */
+public class XorParity {
+
+    public static final int DEFAULT_GROUP_SIZE = 8;
+    public static final int MAX_GROUP_SIZE = 64;
+
+    /** Bytes a PARITY payload takes more than the longest payload of its group */
+    public static final int HEADER_LEN = 4;
+
+    private final TreeMap<Long, Packet> received = new TreeMap<>();
+
+    /**
+     * Computes the parity packets of the packets of a message
+     * @param packets DATA packets of a message followed by its FIN, with consecutive sequence numbers
+     * @param group_size number of packets per group
+     * @return PARITY Packets, one per group, in the order of the groups
+     */
+    public static List<Packet> encode(List<Packet> packets, int group_size) {
+        List<Packet> parity = new ArrayList<>();
+        for (int first = 0; first < packets.size(); first += group_size)
+            parity.add(encodeGroup(packets.subList(first, Math.min(packets.size(), first + group_size))));
+        return parity;
+    }
+
+    /**
+     * @param parity PARITY Packet
+     * @return sequence number of the last packet of its group
+     */
+    public static long lastSequenceNumber(Packet parity) {
+        return parity.getSequenceNumber() + Byte.toUnsignedInt(parity.getPayload()[0]) - 1;
+    }
+
+    /**
+     * Keeps a DATA or FIN packet received, forgetting the packets too old to belong to a group with a missing packet
+     * @param packet Packet received on the stream
+     * @param expected next sequence number the receiver of the stream expects
+     */
+    public void add(Packet packet, long expected) {
+        received.put(packet.getSequenceNumber(), packet);
+        received.headMap(expected - MAX_GROUP_SIZE).clear();
+    }
+
+    /**
+     * Rebuilds the packet of the group of a PARITY packet that did not arrive, if it is the only one
+     * @param parity PARITY Packet received on the stream
+     * @return the rebuilt DATA or FIN Packet, or null if nothing is missing or more than one packet is
+     */
+    public Packet recover(Packet parity) {
+        ByteBuffer buf = ByteBuffer.wrap(parity.getPayload());
+        if (buf.remaining() < HEADER_LEN)
+            return null;
+
+        int count = Byte.toUnsignedInt(buf.get());
+        int type = Byte.toUnsignedInt(buf.get());
+        int length = Short.toUnsignedInt(buf.getShort());
+        byte[] payload = new byte[buf.remaining()];
+        buf.get(payload);
+
+        long first = parity.getSequenceNumber();
+        long missing = -1;
+        for (long seq_no = first; seq_no < first + count; seq_no++) {
+            Packet packet = received.get(seq_no);
+            if (packet == null) {
+                if (missing >= 0)
+                    return null;
+                missing = seq_no;
+                continue;
+            }
+            type ^= packet.getType();
+            length ^= packet.getPayload().length;
+            xor(payload, packet.getPayload());
+        }
+
+        for (long seq_no = first; seq_no < first + count; seq_no++)
+            received.remove(seq_no);
+        boolean valid_type = type == PacketType.DATA.getValue() || type == PacketType.FIN.getValue();
+        if (missing < 0 || !valid_type || length > payload.length)
+            return null;
+
+        byte[] rebuilt = new byte[length];
+        System.arraycopy(payload, 0, rebuilt, 0, length);
+        return parity.toBuilder()
+                .setType(type)
+                .setSequenceNumber(missing)
+                .setPayload(rebuilt)
+                .create();
+    }
+
+    private static Packet encodeGroup(List<Packet> group) {
+        int longest = 0;
+        for (Packet packet : group)
+            longest = Math.max(longest, packet.getPayload().length);
+
+        int type = 0;
+        int length = 0;
+        byte[] payload = new byte[longest];
+        for (Packet packet : group) {
+            type ^= packet.getType();
+            length ^= packet.getPayload().length;
+            xor(payload, packet.getPayload());
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LEN + longest);
+        buf.put((byte) group.size());
+        buf.put((byte) type);
+        buf.putShort((short) length);
+        buf.put(payload);
+        return group.get(0).toBuilder()
+                .setType(PacketType.PARITY.getValue())
+                .setPayload(buf.array())
+                .create();
+    }
+
+    private static void xor(byte[] dst, byte[] src) {
+        for (int i = 0; i < src.length; i++)
+            dst[i] ^= src[i];
+    }
+}
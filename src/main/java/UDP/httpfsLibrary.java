@@ -1,10 +1,14 @@
 package UDP;
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.*;
+import java.util.zip.ZipException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * UDP.httpfsLibrary is a self-contained HTTP Server Library that handles requests from httpc client
@@ -20,13 +24,37 @@ public class httpfsLibrary {
     private boolean is_verbose = false;
     private Path root = Paths.get("").toAbsolutePath();  //default system current dir
     private String statusLine = "200 OK";
-    private String udp_request;
+    private String extraHeaders = "";
+    private boolean keep_alive = false;     // the UDP connection stays open unless the request says close
+    private Path served_file;
+    private boolean stream_files = false;
+    private ContentCache cache = new ContentCache(ContentCache.DEFAULT_MAX_BYTES, false);
+    private MetadataCache metadata;
     public String request_method;
 
     public httpfsLibrary(String[] args) {
         setArgs(args);
     }
 
+    /**
+     * Constructor of a httpfsLibrary for another thread, with the same root directory, options and caches as the
+     * one given, but requests of its own
+     * @param shared httpfsLibrary object the settings and caches come from
+     */
+    public httpfsLibrary(httpfsLibrary shared) {
+        is_verbose = shared.is_verbose;
+        root = shared.root;
+        cache = shared.cache;
+        metadata = shared.metadata;
+    }
+
+    /**
+     * @return true if the server was started with -v
+     */
+    public boolean isVerbose() {
+        return is_verbose;
+    }
+
     /**
      * Constructor for the UDP.httpfsLibrary class.
      */
@@ -43,6 +71,10 @@ public class httpfsLibrary {
     private void setArgs(String[] args){
         is_verbose = Arrays.asList(args).contains("-v");
 
+        int findM = Arrays.asList(args).indexOf("-m");
+        long cache_size = findM == -1 ? ContentCache.DEFAULT_MAX_BYTES : parseSize(args[findM+1]);
+        cache = new ContentCache(cache_size, Arrays.asList(args).contains("--off-heap"));
+
         //Add the root to dir
         if(Arrays.asList(args).contains("-d")){
             boolean root_arg = false;
@@ -66,184 +98,350 @@ public class httpfsLibrary {
             }
         }
 
+        metadata = new MetadataCache(root);
     }
 
 
-    public String parseUDP_request(String req) throws IOException{
-
-        udp_request = req;
-        StringBuilder request = new StringBuilder();
-        StringBuilder entity_body = new StringBuilder();
-        StringBuilder response = new StringBuilder();
-        udp_settings(request, entity_body);
+    /**
+     * @param size number of bytes, with an optional k, m or g suffix
+     * @return the number of bytes
+     */
+    private static long parseSize(String size){
+        String digits = size.trim().toLowerCase();
+        int shift = 0;
+        if (digits.endsWith("k"))
+            shift = 10;
+        else if (digits.endsWith("m"))
+            shift = 20;
+        else if (digits.endsWith("g"))
+            shift = 30;
+        if (shift > 0)
+            digits = digits.substring(0, digits.length() - 1);
+        return Long.parseLong(digits) << shift;
+    }
 
-        if (request.toString().startsWith("GET")) {
-            request_method = "get";
-            processGetRequest(request.toString().split(" ")[1], response);
-        } else if (request.toString().startsWith("POST")) {
-            request_method = "post";
-            processPostRequest(request.toString().split(" ")[1], entity_body, response);
-        }
+    /**
+     * @return the ContentCache of the files served, with its hit and miss counters
+     */
+    public ContentCache getContentCache(){
+        return cache;
+    }
 
-        int contentLength = response.length();
-        String data = getResponseData(contentLength, response);
-        return data;
+    /**
+     * @return the MetadataCache of the paths under the root directory, with its hit and miss counters
+     */
+    public MetadataCache getMetadataCache(){
+        return metadata;
     }
 
-    public String getRequestMethod(){
-        return this.request_method;
+    /**
+     * Parses a request received over UDP and produces its response. A request body with a Content-Encoding is
+     * decompressed first, and the response body is compressed with the coding the request accepts, if any.
+     * A file is not read here: the response streams it from disk as its packets are sent, only the bytes of its
+     * Range if the request has one
+     * @param req bytes of the HTTP request
+     * @return the HTTP response
+     */
+    public OutgoingMessage parseUDP_request(byte[] req) throws IOException{
+        return parseUDP_request(RequestParser.parse(req));
     }
 
     /**
-     * Parses the client request. Creates a reader that reads the client request, and a writer class
-     * to write the output stream back to the client.
+     * Produces the response of a request received over UDP and parsed
+     * @param request RequestParser object of the whole request
+     * @return the HTTP response
      */
-    public void parseClientRequest() throws IOException{
-        try(  PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true);
-              BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));)
-        {
+    public OutgoingMessage parseUDP_request(RequestParser request) throws IOException{
 
-            StringBuilder request = new StringBuilder();
-            StringBuilder entity_body = new StringBuilder();
-            StringBuilder response = new StringBuilder();
+        statusLine = "200 OK";
+        extraHeaders = "";
+        keep_alive = !request.hasHeader("Connection", "close");
+        served_file = null;
+        stream_files = true;
+        StringBuilder response = new StringBuilder();
 
-            System.out.println();
+        printRequest(request);
+        if (!request.isHeadComplete() || request.isError()) {
+            statusLine = "400 Bad Request";
+            response.append("Malformed request\r\n");
+            return getResponseData(response);
+        }
 
-            settings(reader, request, entity_body);
+        byte[] entity_body;
+        try {
+            entity_body = decodeBody(request);
+        } catch (ZipException e) {
+            statusLine = "400 Bad Request";
+            response.append("The body does not match its Content-Encoding\r\n");
+            return getResponseData(response);
+        } catch (ContentEncoding.TooLargeException e) {
+            statusLine = "413 Payload Too Large";
+            response.append(e.getMessage()).append("\r\n");
+            return getResponseData(response);
+        }
 
-            if (request.toString().startsWith("GET")) {
-                processGetRequest(request.toString().split(" ")[1], response);
-            } else if (request.toString().startsWith("POST")) {
-                processPostRequest(request.toString().split(" ")[1], entity_body, response);
-            }
+        if (request.isMethod("GET")) {
+            request_method = "get";
+            processGetRequest(request.getUri(), response);
+        } else if (request.isMethod("POST")) {
+            request_method = "post";
+            processPostRequest(request.getUri(), entity_body, response);
+        }
 
-            int contentLength = response.length();
-            String data = getResponseData(contentLength, response);
-            writer.println(data);
-            writer.flush();
+        String coding = ContentEncoding.negotiate(request.header("Accept-Encoding"));
+        if (served_file != null)
+            return getFileResponse(served_file, coding, request.header("Range"));
 
-            if(!is_verbose)
-                System.out.println("Request from client finalized");
+        return getEncodedResponse(response.toString().getBytes(UTF_8), coding);
+    }
 
-            System.out.println("---------------------------------------------------------------\n\n");
+    /**
+     * Creates the response of a file read from disk as it is sent. A file with an up to date gzip copy is sent
+     * from the copy, a file small enough is compressed in memory, any other file is sent as it is.
+     * A request with a Range gets the bytes of the file as it is in a 206 response, so a transfer that stopped
+     * can be resumed where it stopped. The file comes from the ContentCache unless it is too large for it
+     * @param file readable file requested
+     * @param coding coding negotiated with the client, or null
+     * @param range value of the Range header, or null
+     * @return the HTTP response
+     */
+    private OutgoingMessage getFileResponse(Path file, String coding, String range) throws IOException{
+        // A range is counted in bytes of the file as it is
+        if (range != null)
+            coding = null;
+        Path source = precompressed(file, coding);
+        if (source == null) {
+            if (coding != null && metadata.get(file).size() <= ContentEncoding.MAX_ENCODED_LENGTH)
+                return getEncodedResponse(readAllBytes(file), coding);
+            source = file;
+            coding = null;
+        }
 
-        }catch (IOException e){
-            System.out.println("Connection Problem with connection or port ");
-            System.out.println(e.getMessage());
+        ByteBuffer content;
+        FileChannel channel = null;
+        try {
+            content = cache.read(source);
+            if (content == null)
+                channel = FileChannel.open(source, StandardOpenOption.READ);
+        } catch (IOException e) {
+            statusLine = "500 Internal Server Error";
+            StringBuilder response = new StringBuilder("Error while reading the file contents\r\n");
+            return getResponseData(response);
+        }
+        if (is_verbose) {
+            System.out.println("Content cache " + cache);
+            System.out.println("Metadata cache " + metadata);
+        }
+        long length = content != null ? content.remaining() : channel.size();
+        extraHeaders = "\r\nAccept-Ranges: bytes";
+
+        ByteRange bytes = ByteRange.parse(range, length);
+        if (bytes != null && !bytes.isSatisfiable()) {
+            if (channel != null)
+                channel.close();
+            statusLine = "416 Range Not Satisfiable";
+            extraHeaders += "\r\nContent-Range: " + bytes.contentRange();
+            return new OutgoingMessage(getResponseHeaders(0, null));
+        }
+        long start = 0;
+        if (bytes != null) {
+            statusLine = "206 Partial Content";
+            extraHeaders += "\r\nContent-Range: " + bytes.contentRange();
+            start = bytes.getStart();
+            length = bytes.getLength();
         }
 
+        byte[] headers = getResponseHeaders(length, coding);
+        if (channel != null)
+            return new OutgoingMessage(headers, channel, start, length);
+
+        content.position((int) start);
+        content.limit((int) (start + length));
+        return new OutgoingMessage(headers, content);
     }
 
-    private void udp_settings(StringBuilder request, StringBuilder entity_body) {
-        boolean has_body = false;
-        boolean crlf = false;
-        StringBuilder line = new StringBuilder();
+    /**
+     * @param file file served
+     * @param coding coding negotiated with the client, or null
+     * @return the gzip copy of the file if the coding is gzip and the copy is up to date, null otherwise
+     */
+    private Path precompressed(Path file, String coding) throws IOException{
+        if (!ContentEncoding.GZIP.equals(coding))
+            return null;
+
+        Path copy = file.resolveSibling(file.getFileName() + ".gz");
+        MetadataCache.Metadata copy_metadata = metadata.get(copy);
+        if (copy_metadata.isRegularFile() && copy_metadata.lastModifiedTime().compareTo(metadata.get(file).lastModifiedTime()) >= 0)
+            return copy;
+        return null;
+    }
 
-        // I made this for getting the value of content-header
-        int content_length=0;
+    /**
+     * Reads a whole file through the ContentCache
+     * @param file regular file
+     * @return bytes of the file
+     */
+    private byte[] readAllBytes(Path file) throws IOException{
+        ByteBuffer content = cache.read(file);
+        if (content == null)
+            return Files.readAllBytes(file);
+
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
 
-        char character;
-        System.out.println("\n---------------------- Http Client Request ----------------------------\n");
-        for (int i=0; i < udp_request.length(); i++){
-            character = udp_request.charAt(i);
-            line = line.append(character);
-
-            // line always has a line.
-            if(character=='\n'){
-                if(is_verbose)
-                    System.out.print(line);
-
-                // Find the content-length header and find the length of the entity body.
-                if(line.toString().matches("Content-Length:(.*)\r\n")){
-                    String string_line = line.toString();
-                    string_line = string_line.substring(15).replaceAll("\\s+","");
-                    content_length = Integer.parseInt(string_line);
-                    has_body = true;
-                }
+    /**
+     * Creates the response of a body held in memory, compressed when it is worth it
+     * @param body bytes of the response body
+     * @param coding coding negotiated with the client, or null
+     * @return the HTTP response
+     */
+    private OutgoingMessage getEncodedResponse(byte[] body, String coding) throws IOException{
+        byte[] encoded = ContentEncoding.encodeBody(body, coding);
+        if (encoded == null)
+            coding = null;
+        else
+            body = encoded;
+
+        return new OutgoingMessage(getResponseHeaders(body.length, coding), body);
+    }
 
-                if(crlf){
-                    entity_body.append(line);
-                }
+    /**
+     * Produces the response of a POST request whose body was written to a temporary file as it arrived.
+     * The file replaces its target with an atomic rename
+     * @param request RequestParser object of the request line and headers
+     * @param upload Upload object of the body
+     * @return the HTTP response
+     */
+    public OutgoingMessage commitUDP_upload(RequestParser request, RequestSpool.Upload upload) throws IOException{
 
-                // crlf between header and the entity body. Also, it has the content-length header.
-                // get request will not execute this. cuz it doesn't have content-length header
-                if(line.toString().matches("\r\n") && has_body){
-                    crlf = true;
-                }
+        statusLine = "200 OK";
+        extraHeaders = "";
+        keep_alive = !request.hasHeader("Connection", "close");
+        StringBuilder response = new StringBuilder();
+        printRequest(request);
+        request_method = "post";
+        String requestPathLine = request.getUri();
+
+        if (upload.isFailed()) {
+            statusLine = "500 Internal Server Error";
+            response.append("Error while writing the file contents\r\n");
+            upload.discard();
+        }
+        else if (upload.getWritten() != upload.getLength()) {
+            // The message ended before its body, the target is left as it was
+            statusLine = "400 Bad Request";
+            response.append("The body is shorter than its Content-Length\r\n");
+            upload.discard();
+        }
+        else if (upload.getFile() == null) {
+            // The target is a directory or read only, the body was dropped
+            processPostRequest(requestPathLine, new byte[0], response);
+        }
+        else {
+            processPostUpload(requestPathLine, upload, response);
+        }
 
-                request = request.append(line);
+        String coding = ContentEncoding.negotiate(request.header("Accept-Encoding"));
+        return getEncodedResponse(response.toString().getBytes(UTF_8), coding);
+    }
 
-                if(request.toString().startsWith("GET") && line.toString().matches("\r\n")){
-                    break;
-                }else if(request.toString().startsWith("POST")){
-                    // might have an error here later
-                    if(entity_body.toString().length() == content_length+4 && crlf){
-                        break;
-                    }
-                }
-                line.setLength(0);
+    /**
+     * Creates the temporary file the body of a POST request is written to, in the directory of its target
+     * so the rename that commits it is atomic
+     * @param requestPathLine String object containing the request path or file.
+     * @return the temporary file, or null if the target is a directory or read only
+     */
+    public Path createUpload(String requestPathLine) throws IOException{
+        Path searchPath = metadata.resolve(requestPathLine);
+        MetadataCache.Metadata target = metadata.get(searchPath);
+        if (target.isDirectory() || (target.exists() && !target.isWritable()))
+            return null;
+
+        Files.createDirectories(searchPath.getParent());
+        // Files.createFile gives the permissions of a new file, a file overwritten keeps its own
+        Random random = new Random();
+        while (true) {
+            Path upload = searchPath.resolveSibling("." + searchPath.getFileName() + "." + Long.toHexString(random.nextLong()) + ".part");
+            try {
+                Files.createFile(upload);
+            } catch (FileAlreadyExistsException e) {
+                continue;
             }
+            try {
+                if (target.exists())
+                    Files.setPosixFilePermissions(upload, Files.getPosixFilePermissions(searchPath));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system
+            }
+            return upload;
         }
+    }
 
-        System.out.println("\n-----------------------------------------------------------------\n");
+    /**
+     * Gives the body of a request, decompressed if it was sent with a Content-Encoding
+     * @param request RequestParser object of the whole request
+     * @return bytes of the body, Content-Length of them at most
+     */
+    private byte[] decodeBody(RequestParser request) throws IOException{
+        byte[] body = request.getBody();
+        String coding = request.header("Content-Encoding");
+        if (coding == null)
+            return body;
+
+        byte[] data = ContentEncoding.decode(body, coding, ContentEncoding.MAX_DECODED_LENGTH);
+        System.out.println("Request body decoded from " + coding + ", " + body.length + " to " + data.length + " bytes");
+        return data;
+    }
 
+    public String getRequestMethod(){
+        return this.request_method;
     }
 
     /**
-     * Reads the client request line by line, parsing each header and setting the request object and request body data
-     * @param reader BufferedReader object to read the client request.
-     * @param request StringBuilder object to get the contents of the client request headers
-     * @param entity_body StringBuilder object that contains the body of the POST request from client
+     * Parses the client request. Creates a reader that reads the client request, and a writer class
+     * to write the output stream back to the client.
      */
-    private void settings(BufferedReader reader, StringBuilder request, StringBuilder entity_body) throws IOException{
-        try{
-            boolean has_body = false;
-            boolean crlf = false;
-            StringBuilder line = new StringBuilder();
-
-            // I made this for getting the value of content-header
-            int content_length=0;
-
-            int character;
-            while((character = reader.read()) != -1){
-                line = line.append((char) character);
-
-                // line always has a line.
-                if(character=='\n'){
-                    if(is_verbose)
-                        System.out.print(line);
-
-                    // Find the content-length header and find the length of the entity body.
-                    if(line.toString().matches("Content-Length:(.*)\r\n")){
-                        String string_line = line.toString();
-                        string_line = string_line.substring(15).replaceAll("\\s+","");
-                        content_length = Integer.parseInt(string_line);
-                        has_body = true;
-                    }
+    public void parseClientRequest() throws IOException{
+        stream_files = false;
+        extraHeaders = "";
+        keep_alive = false;
+        try(  OutputStream writer = clientSocket.getOutputStream();
+              InputStream reader = clientSocket.getInputStream())
+        {
 
-                    if(crlf){
-                        entity_body.append(line);
-                    }
+            RequestParser request = new RequestParser();
+            StringBuilder response = new StringBuilder();
 
-                    // crlf between header and the entity body. Also, it has the content-length header.
-                    // get request will not execute this. cuz it doesn't have content-length header
-                    if(line.toString().matches("\r\n") && has_body){
-                        crlf = true;
-                    }
+            System.out.println();
 
-                    request = request.append(line);
+            // Reads until the request is complete, its body included
+            byte[] buf = new byte[8192];
+            int read;
+            while (!request.isComplete() && !request.isError() && (read = reader.read(buf)) != -1) {
+                int taken = request.feed(buf, 0, read);
+                if (taken < read)
+                    request.feed(buf, taken, read - taken);
+            }
+            printRequest(request);
 
-                    if(request.toString().startsWith("GET") && line.toString().matches("\r\n")){
-                        break;
-                    }else if(request.toString().startsWith("POST")){
-                        // might have an error here later
-                        if(entity_body.toString().length() == content_length+4 && crlf){
-                            break;
-                        }
-                    }
-                    line.setLength(0);
-                }
+            if (request.isMethod("GET")) {
+                processGetRequest(request.getUri(), response);
+            } else if (request.isMethod("POST")) {
+                processPostRequest(request.getUri(), request.getBody(), response);
             }
+
+            OutgoingMessage data = getResponseData(response);
+            while (data.hasRemaining())
+                writer.write(data.read(8192));
+            writer.flush();
+
+            if(!is_verbose)
+                System.out.println("Request from client finalized");
+
+            System.out.println("---------------------------------------------------------------\n\n");
+
         }catch (IOException e){
             System.out.println("Connection Problem with connection or port ");
             System.out.println(e.getMessage());
@@ -251,23 +449,40 @@ public class httpfsLibrary {
 
     }
 
+    /**
+     * Prints the request received, whole in verbose mode
+     * @param request RequestParser object of the request
+     */
+    private void printRequest(RequestParser request){
+        System.out.println("\n---------------------- Http Client Request ----------------------------\n");
+        if(is_verbose)
+            System.out.print(request);
+        System.out.println("\n-----------------------------------------------------------------\n");
+    }
+
     /**
      * Process the GET request to read folder files and directories or read file contents
      * @param requestPathLine String object containing the request path or file.
      * @param response StringBuilder object to concatenate the server response body
      */
     private void processGetRequest(String requestPathLine, StringBuilder response){
-        Path normalizePath = Paths.get(requestPathLine).normalize();
-        String relativePath = normalizePath.toString();
-
-        Path searchPath = Paths.get(root.toString(), relativePath);
+        Path searchPath = metadata.resolve(requestPathLine);
+        MetadataCache.Metadata target;
+        try {
+            target = metadata.get(searchPath);
+        } catch (IOException e) {
+            statusLine = "500 Internal Server Error";
+            response.append(e + "\r\n");
+            System.err.println(e);
+            return;
+        }
 
-        if (Files.exists(searchPath)){
+        if (target.exists()){
 
             //If it is a directory, print all the list of files
-            if(Files.isDirectory(searchPath)){
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(searchPath)) {
-                    for (Path file: stream) {
+            if(target.isDirectory()){
+                try {
+                    for (Path file: metadata.list(searchPath)) {
                         response.append(file.getFileName() + "\r\n");
                     }
                 } catch (IOException | DirectoryIteratorException x) {
@@ -278,11 +493,15 @@ public class httpfsLibrary {
             }
 
             //If it is a file, get all contents and send to client
-            else if(Files.isRegularFile(searchPath)){
+            else if(target.isRegularFile()){
                 try {
-                    if(Files.isReadable(searchPath)){
-                        String data = new String(Files.readAllBytes(searchPath));
-                        response.append(data);
+                    if(target.isReadable()){
+                        served_file = searchPath;
+                        // Over UDP the file is streamed from disk by the response
+                        if(!stream_files){
+                            String data = new String(readAllBytes(searchPath));
+                            response.append(data);
+                        }
                     }
                     else{
                         statusLine = "403 Forbidden";
@@ -306,26 +525,62 @@ public class httpfsLibrary {
     }
 
     /**
-     * Process the POST request and writes data to a file
+     * Renames the temporary file of a POST body over its target
      * @param requestPathLine String object containing the request path or file.
-     * @param entity_body StringBuilder object that contains the body of the POST request from client
+     * @param upload Upload object of the body
      * @param response StringBuilder object to concatenate the server response body
      */
-    public void processPostRequest(String requestPathLine, StringBuilder entity_body, StringBuilder response){
-        Path normalizePath = Paths.get(requestPathLine).normalize();
-        String relativePath = normalizePath.toString();
+    private void processPostUpload(String requestPathLine, RequestSpool.Upload upload, StringBuilder response){
+        Path searchPath = metadata.resolve(requestPathLine);
+
+        try {
+            boolean exists = metadata.get(searchPath).exists();
+            Files.move(upload.getFile(), searchPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            metadata.invalidate(searchPath);
+            cache.invalidate(searchPath);
+            if (exists) {
+                System.out.println("File is overwritten.");
+                response.append("File is overwritten.\r\n");
+            }
+            else {
+                System.out.println("The file doesn't exist, so it creates a file.");
+            }
+        } catch (IOException exception) {
+            statusLine = "500 Internal Server Error";
+            response.append("Error while writing the file contents\r\n");
+            upload.discard();
+            exception.printStackTrace();
+        }
+    }
 
-        Path searchPath = Paths.get(root.toString(), relativePath);
+    /**
+     * Process the POST request and writes data to a file
+     * @param requestPathLine String object containing the request path or file.
+     * @param entity_body bytes of the body of the POST request from client
+     * @param response StringBuilder object to concatenate the server response body
+     */
+    public void processPostRequest(String requestPathLine, byte[] entity_body, StringBuilder response){
+        Path searchPath = metadata.resolve(requestPathLine);
+        MetadataCache.Metadata target;
+        try {
+            target = metadata.get(searchPath);
+        } catch (IOException exception) {
+            statusLine = "500 Internal Server Error";
+            response.append("Error while writing the file contents\r\n");
+            exception.printStackTrace();
+            return;
+        }
 
         // Either the file or directory exists
-        if (Files.exists(searchPath)){
+        if (target.exists()){
 
             // If it is a file, overwrite.
-            if(Files.isRegularFile(searchPath)){
+            if(target.isRegularFile()){
                 try {
-                    if(Files.isWritable(searchPath)){
-                        byte[] content = entity_body.toString().getBytes();
-                        Files.write(searchPath, content);
+                    if(target.isWritable()){
+                        Files.write(searchPath, entity_body);
+                        metadata.invalidate(searchPath);
+                        cache.invalidate(searchPath);
                         System.out.println("File is overwritten.");
                         response.append("File is overwritten.\r\n");
                     }else{
@@ -353,8 +608,8 @@ public class httpfsLibrary {
             try {
                 Files.createDirectories(searchPath.getParent());
                 Files.createFile(searchPath);
-                byte[] content = entity_body.toString().getBytes();
-                Files.write(searchPath, content);
+                Files.write(searchPath, entity_body);
+                metadata.invalidate(searchPath);
                 System.out.println("The file doesn't exist, so it creates a file.");
             } catch (Exception exception) {
                 exception.printStackTrace();
@@ -363,20 +618,36 @@ public class httpfsLibrary {
     }
 
     /**
-     * Creates the server response headers and body
-     * @param contentLength int representing the content length of the body.
-     * @param response StringBuilder object to concatenate the server response body
-     * @return responseHeaders String object corresponding to the response data
+     * Creates a response without reading or writing any file, when the request could not be handled
+     * @param status status code and reason phrase
+     * @param message body of the response
+     * @param keep_alive true if the connection stays open after the response
+     * @return the HTTP response
      */
-    private String getResponseData(int contentLength, StringBuilder response){
-
-        SimpleDateFormat df = new SimpleDateFormat("MM/dd/yyyy h:mm:ss");
-        String headerDate = df.format(new Date());
+    public OutgoingMessage getErrorResponse(String status, String message, boolean keep_alive){
+        statusLine = status;
+        extraHeaders = "";
+        this.keep_alive = keep_alive;
+        return getResponseData(new StringBuilder(message).append("\r\n"));
+    }
 
-        String responseData = "HTTP/1.0 " + statusLine + " \r\nDate: " + headerDate +
-                "\r\nServer: localhost\r\nContent-Type: text/html\r\nContent-length: " + contentLength +
-                "\r\nConnection: Closed\r\n\r\n" + response.toString();
+    /**
+     * Creates the server response headers and body
+     * @param response StringBuilder object of the server response body
+     * @return the HTTP response, whose Content-length counts the bytes of the body
+     */
+    private OutgoingMessage getResponseData(StringBuilder response){
+        byte[] body = response.toString().getBytes(UTF_8);
+        return new OutgoingMessage(getResponseHeaders(body.length, null), body);
+    }
 
-        return responseData;
+    /**
+     * Creates the server response headers
+     * @param contentLength int representing the content length of the body, as sent.
+     * @param contentEncoding coding of the body, or null if it is sent as it is
+     * @return bytes of the headers and the empty line that ends them
+     */
+    private byte[] getResponseHeaders(long contentLength, String contentEncoding){
+        return ResponseHeaders.encode(statusLine, contentLength, contentEncoding, extraHeaders, keep_alive);
     }
 }
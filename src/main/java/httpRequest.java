@@ -1,4 +1,6 @@
+import UDP.ContentEncoding;
 import UDP.UDPClient;
+import UDP.XorParity;
 import java.io.*;
 import java.net.Socket;
 import java.net.URL;
@@ -8,6 +10,9 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 public class httpRequest {
 
     String[] args;
@@ -23,6 +28,13 @@ public class httpRequest {
     private boolean has_headers = false;
     private boolean has_file_data = false;
     private boolean has_inline_data = false;
+    private boolean fast_open = false;
+    private boolean fec = false;
+    private boolean compress = false;
+    private boolean resume = false;
+    private String output_file;
+    private long resume_offset = 0;
+    private boolean keep_alive = false;
     private List<String> requestHeaders = new ArrayList<String>();
     public CmdValidation cmd_validation;
     public httpResponse response;
@@ -32,6 +44,8 @@ public class httpRequest {
         this.cmd_validation = cmd_validation;
         setArgs(args);
         udp_client = new UDPClient();
+        udp_client.setFastOpen(fast_open);
+        udp_client.setParityGroup(fec ? XorParity.DEFAULT_GROUP_SIZE : 0);
         sendUDP_request();
     }
 
@@ -42,6 +56,13 @@ public class httpRequest {
         this.has_headers = Arrays.asList(this.args).contains("-h");
         this.has_inline_data = Arrays.asList(this.args).contains("-d");
         this.has_file_data = Arrays.asList(this.args).contains("-f");
+        this.fast_open = Arrays.asList(this.args).contains("--fast-open");
+        this.fec = Arrays.asList(this.args).contains("--fec");
+        this.compress = Arrays.asList(this.args).contains("--compress");
+        this.resume = Arrays.asList(this.args).contains("--resume");
+        int output = Arrays.asList(this.args).indexOf("-o");
+        if (output >= 0 && output + 1 < this.args.length)
+            this.output_file = this.args[output + 1];
         addRequestHeaders();
     }
 
@@ -101,35 +122,118 @@ public class httpRequest {
     }
 
     private void getUDP_request() throws IOException{
+        sendPipelined();
+    }
+
+    private void postUDP_request() throws IOException{
+        sendPipelined();
+    }
 
-        this.request_url = new URL(this.args[this.args.length-1]);
-        this.host = this.request_url.getHost();
-        this.portNumber = (this.request_url.getPort() == -1) ? this.request_url.getDefaultPort() : this.request_url.getPort(); //If the port number is not specified it returns -1
-        this.request_URI = request_url.getFile();  //gets the path + query if there is one
+    /**
+     * Sends one request per URL of the command over a single UDP connection, each on its own stream, and prints
+     * the responses in order. Every request keeps the connection alive except the last one
+     */
+    private void sendPipelined() throws IOException{
+
+        List<String> urls = getUrls();
+        List<byte[]> requests = new ArrayList<byte[]>();
+        File output = this.output_file == null ? null : new File(this.output_file);
+        this.resume_offset = this.resume && output != null && output.isFile() ? output.length() : 0;
+        for (int i = 0; i < urls.size(); i++) {
+            this.request_url = new URL(urls.get(i));
+            this.host = this.request_url.getHost();
+            this.portNumber = (this.request_url.getPort() == -1) ? this.request_url.getDefaultPort() : this.request_url.getPort(); //If the port number is not specified it returns -1
+            this.request_URI = request_url.getFile();  //gets the path + query if there is one
+            this.keep_alive = i < urls.size() - 1;
+            requests.add(this.requestMethod.equalsIgnoreCase("get") ? getRequestData().getBytes(UTF_8) : postRequestBytes());
+        }
         this.response = new httpResponse(this.args);
 
-        String req = getRequestData();
-        udp_client.runClient(req, requestMethod);
+        udp_client.runRequests(requests, requestMethod);
+
+        if (this.output_file != null) {
+            saveResponse();
+            return;
+        }
 
-        BufferedReader bufReader = new BufferedReader(new StringReader(udp_client.get_response()));
-        this.response.printHttpResponse(bufReader);
+        for (byte[] udp_response : udp_client.get_response_bytes()) {
+            BufferedReader bufReader = new BufferedReader(new StringReader(decodeResponse(udp_response)));
+            this.response.printHttpResponse(bufReader);
+        }
 
     }
 
-    private void postUDP_request() throws IOException{
+    /**
+     * Decompresses the body of a response sent with a Content-Encoding
+     * @param udp_response bytes of the HTTP response
+     * @return HTTP response with its body as the server read it
+     */
+    private String decodeResponse(byte[] udp_response) throws IOException{
+        int offset = ContentEncoding.bodyOffset(udp_response);
+        if (offset < 0)
+            return new String(udp_response, UTF_8);
+
+        String headers = new String(udp_response, 0, offset, ISO_8859_1);
+        String coding = ContentEncoding.header(headers, "Content-Encoding");
+        byte[] body = Arrays.copyOfRange(udp_response, offset, udp_response.length);
+        return headers + new String(ContentEncoding.decode(body, coding), UTF_8);
+    }
 
-        this.request_url = new URL(this.args[this.args.length-1]);
-        this.host = this.request_url.getHost();
-        this.portNumber = (this.request_url.getPort() == -1) ? this.request_url.getDefaultPort() : this.request_url.getPort(); //If the port number is not specified it returns -1
-        this.request_URI = request_url.getFile();  //gets the path + query if there is one
-        this.response = new httpResponse(this.args);
+    /**
+     * Saves the body of the response to the -o file. A 206 response goes after the bytes already saved, any other
+     * successful response replaces them. When the transfer stopped before the end, the bytes received so far are
+     * saved the same way, so that --resume asks only for the rest
+     */
+    private void saveResponse() throws IOException{
+
+        byte[] udp_response = udp_client.get_partial_response(0);
+        boolean complete = udp_response == null;
+        if (complete && !udp_client.get_response_bytes().isEmpty())
+            udp_response = udp_client.get_response_bytes().get(0);
+        int offset = udp_response == null ? -1 : ContentEncoding.bodyOffset(udp_response);
+        if (offset < 0) {
+            System.out.println("\nNo response received, nothing saved to " + this.output_file);
+            return;
+        }
 
-        String req = postRequestData();
-        udp_client.runClient(req, requestMethod);
+        String headers = new String(udp_response, 0, offset, ISO_8859_1);
+        this.response.printHttpResponse(new BufferedReader(new StringReader(headers)));
+        int status = Integer.parseInt(headers.split("\\s+")[1]);
+        if (status == 416) {
+            System.out.println(this.output_file + " is already complete");
+            return;
+        }
+        if (status != 200 && status != 206) {
+            System.out.println(new String(udp_response, offset, udp_response.length - offset, UTF_8));
+            return;
+        }
+
+        boolean append = status == 206;
+        String content_range = ContentEncoding.header(headers, "Content-Range");
+        if (append && (content_range == null || !content_range.startsWith("bytes " + this.resume_offset + "-"))) {
+            System.out.println("Unexpected Content-Range " + content_range + ", " + this.output_file + " left as it is");
+            return;
+        }
 
-        BufferedReader bufReader = new BufferedReader(new StringReader(udp_client.get_response()));
-        this.response.printHttpResponse(bufReader);
+        try (FileOutputStream out = new FileOutputStream(this.output_file, append)) {
+            out.write(udp_response, offset, udp_response.length - offset);
+        }
+        long saved = (append ? this.resume_offset : 0) + udp_response.length - offset;
+        if (complete)
+            System.out.println("Saved " + saved + " bytes to " + this.output_file);
+        else
+            System.out.println("Transfer stopped, " + saved + " bytes saved to " + this.output_file + ", use --resume to get the rest");
+    }
 
+    /**
+     * The URLs are the last arguments of the command, there is at least one
+     * @return List of the URLs in the order of the command
+     */
+    private List<String> getUrls(){
+        int first = this.args.length - 1;
+        while (first > 1 && this.args[first-1].matches("https?://.*"))
+            first--;
+        return Arrays.asList(this.args).subList(first, this.args.length);
     }
 
     public String getRequestMethod(){
@@ -208,19 +312,19 @@ public class httpRequest {
             BufferedReader readFile;
             try{
                 readFile = new BufferedReader(new FileReader(data));
+                StringBuilder content = new StringBuilder();
                 String line = readFile.readLine();
-                if(line == null){
-                    data ="";
-                }else{
-                    data = line;
+                if(line != null){
+                    content.append(line);
                 }
 
                 while(line != null){
                     line = readFile.readLine();
                     if(line != null){
-                        data = data + "\n" + line;
+                        content.append("\n").append(line);
                     }
                 }
+                data = content.toString();
                 readFile.close();
             }catch(Exception e){
                 e.printStackTrace();
@@ -266,7 +370,7 @@ public class httpRequest {
 
 
         StringBuilder requestData = new StringBuilder("GET " + this.request_URI + " HTTP/1.0\r\n" + "Host: " + this.host +
-                "\r\nConnection: keep-alive\r\n");
+                "\r\nConnection: " + getConnection() + "\r\n");
 
         if(this.has_headers){
             for (String header : this.requestHeaders) {
@@ -277,17 +381,49 @@ public class httpRequest {
             requestData.append("User-Agent:COMP445").append("\r\n");
             requestData.append("Accept-Language:en-US").append("\r\n");
         }
+        // A file saved with -o is asked for as it is, so that a range of it is a range of the file
+        if(this.output_file == null)
+            requestData.append("Accept-Encoding: ").append(ContentEncoding.ACCEPTED).append("\r\n");
+        if(this.resume_offset > 0)
+            requestData.append("Range: bytes=").append(this.resume_offset).append("-\r\n");
 
         requestData.append("\r\n");
 
         return requestData.toString();
     }
 
+    /**
+     * @return value of the Connection header, the UDP connection is closed after the last pipelined request
+     */
+    private String getConnection(){
+        return this.keep_alive ? "keep-alive" : "close";
+    }
+
     private String postRequestData(){
 
         String data = getData();
+        StringBuilder requestData = new StringBuilder(postRequestHead(data.getBytes(UTF_8).length, null));
+
+        if(this.has_inline_data || this.has_file_data)
+            requestData.append(data).append("\r\n\r\n");
+
+
+        return requestData.toString();
+    }
+
+    /**
+     * Builds the request line and headers of the POST request, with the blank line that ends them
+     * @param content_length number of bytes of the body, as sent
+     * @param content_encoding coding of the body, or null if it is sent as it is
+     * @return the head of the POST request
+     */
+    private String postRequestHead(long content_length, String content_encoding){
+
         StringBuilder requestData = new StringBuilder("POST " + this.request_URI + " HTTP/1.0\r\n" + "Host: " + this.host +
-                "\r\nContent-Length: " + data.length() + "\r\nConnection: keep-alive\r\n");
+                "\r\nContent-Length: " + content_length);
+        if(content_encoding != null)
+            requestData.append("\r\nContent-Encoding: ").append(content_encoding);
+        requestData.append("\r\nConnection: ").append(getConnection()).append("\r\n");
 
         if(this.has_headers){
             for (String header : this.requestHeaders) {
@@ -298,14 +434,27 @@ public class httpRequest {
             requestData.append("User-Agent:COMP445").append("\r\n");
             requestData.append("Accept-Language:en-US").append("\r\n");
         }
+        requestData.append("Accept-Encoding: ").append(ContentEncoding.ACCEPTED).append("\r\n");
 
         requestData.append("\r\n");
-
-        if(this.has_inline_data || this.has_file_data)
-            requestData.append(data).append("\r\n\r\n");
-
-
         return requestData.toString();
     }
 
+    /**
+     * With --compress the body of the POST request is sent gzipped, with its Content-Encoding and the
+     * Content-Length of the compressed body
+     * @return bytes of the POST request
+     */
+    private byte[] postRequestBytes() throws IOException{
+
+        if(!this.compress || !(this.has_inline_data || this.has_file_data))
+            return postRequestData().getBytes(UTF_8);
+
+        byte[] body = ContentEncoding.encode(getData().getBytes(UTF_8), ContentEncoding.GZIP);
+        byte[] headers = postRequestHead(body.length, ContentEncoding.GZIP).getBytes(UTF_8);
+        byte[] request = Arrays.copyOf(headers, headers.length + body.length);
+        System.arraycopy(body, 0, request, headers.length, body.length);
+        return request;
+    }
+
 }
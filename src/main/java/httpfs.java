@@ -18,10 +18,16 @@ public class httpfs {
 
     private UDPServer server;
     private static int serverPort;
+    private static int windowSize;
+    private static boolean virtualThreads;
+    private static CongestionAlgorithm congestion;
 
     public static void main(String[] args) throws IOException {
 
         setServerPort(args);
+        setWindowSize(args);
+        setVirtualThreads(args);
+        setCongestionControl(args);
         printHelp(args);
         new httpfs().runUDP_Server(args);
 
@@ -30,6 +36,9 @@ public class httpfs {
     public void runUDP_Server(String[] args) throws IOException {
         server = new UDPServer();
         server.setServer(serverPort);
+        server.setWindowSize(windowSize);
+        server.setVirtualThreads(virtualThreads);
+        server.setCongestionControl(congestion);
         server.listenAndServe(args);
     }
 
@@ -76,6 +85,45 @@ public class httpfs {
             serverPort = Integer.parseInt(args[findP+1]);
     }
 
+    /**
+     * Sets the selective-repeat window size of the responses
+     * @param args arguments passed from terminal
+     */
+    private static void setWindowSize(String[] args){
+        int findW = Arrays.asList(args).indexOf("-w");
+        if(findW == -1){
+            windowSize = SelectiveRepeatSender.DEFAULT_WINDOW_SIZE;
+        }
+        else
+            windowSize = Integer.parseInt(args[findW+1]);
+    }
+
+    /**
+     * Sets whether each connection is served on a virtual thread of its own
+     * @param args arguments passed from terminal
+     */
+    private static void setVirtualThreads(String[] args){
+        virtualThreads = Arrays.asList(args).contains("--virtual-threads");
+    }
+
+    /**
+     * Sets the congestion control algorithm of the responses
+     * @param args arguments passed from terminal
+     */
+    private static void setCongestionControl(String[] args){
+        int findC = Arrays.asList(args).indexOf("-c");
+        if(findC == -1){
+            congestion = CongestionAlgorithm.DEFAULT;
+        }
+        else {
+            congestion = CongestionAlgorithm.fromName(args[findC+1]);
+            if(congestion == null){
+                System.out.println("Unknown congestion control " + args[findC+1] + ", using " + CongestionAlgorithm.DEFAULT);
+                congestion = CongestionAlgorithm.DEFAULT;
+            }
+        }
+    }
+
     /**
      * Prints help commands to user
      * @param args arguments passed from terminal
@@ -83,11 +131,20 @@ public class httpfs {
     private static void printHelp(String[] args){
         if(args[0].equalsIgnoreCase("help")){
             System.out.println("httpfs is a simple file server.");
-            System.out.println("usage: httpfs [-v] [-p PORT] [-d PATH-TO-DIR]");
+            System.out.println("usage: httpfs [-v] [-p PORT] [-d PATH-TO-DIR] [-w WINDOW] [-c reno|cubic|bbr] [-m CACHE-SIZE [--off-heap]] [--virtual-threads]");
             System.out.println("  -v Prints debugging messages.");
             System.out.println("  -p Specifies the port number that the server will listen and serve at.");
             System.out.println("     Default is 8080.");
             System.out.println("  -d Specifies the directory that the server will use to read/write\r\nrequested files. Default is the current directory when launching the\r\napplication.");
+            System.out.println("  -w Specifies how many packets can be sent without waiting for their ACK.");
+            System.out.println("     Default is " + SelectiveRepeatSender.DEFAULT_WINDOW_SIZE + ".");
+            System.out.println("  -c Specifies the congestion control algorithm of the responses: reno, cubic or bbr.");
+            System.out.println("     Default is " + CongestionAlgorithm.DEFAULT.name().toLowerCase() + ".");
+            System.out.println("  -m Specifies the memory for the contents of the files served most often, in bytes");
+            System.out.println("     or with a k, m or g suffix, 0 to read every file from disk. Default is 64m.");
+            System.out.println("  --off-heap Keeps those contents outside the Java heap.");
+            System.out.println("  --virtual-threads Serves each client on a virtual thread of its own, fed by one");
+            System.out.println("     thread reading the port. Needs Java 21, platform threads are used before it.");
             System.exit(0);
         }
     }
@@ -0,0 +1,106 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AckPayloadTest {
+
+    private static Packet data(long seq_no) throws UnknownHostException {
+        return new Packet.Builder()
+                .setType(PacketType.DATA.getValue())
+                .setSequenceNumber(seq_no)
+                .setPeerAddress(InetAddress.getByName("127.0.0.1"))
+                .setPortNumber(41830)
+                .setPayload(new byte[] { (byte) seq_no })
+                .create();
+    }
+
+    private static AckPayload roundTrip(long seq_no, SelectiveRepeatReceiver receiver) {
+        byte[] dst = new byte[AckPayload.MAX_LEN];
+        int length = AckPayload.encode(seq_no, receiver, dst);
+        return AckPayload.parse(Arrays.copyOf(dst, length));
+    }
+
+    @Test
+    void ackWithoutReceiverAcknowledgesOnlyItsPacket() {
+        AckPayload ack = roundTrip(7, null);
+
+        assertEquals(7, ack.getSequenceNumber());
+        assertEquals(8, ack.getCumulative());
+        assertEquals(0, ack.getBlockCount());
+    }
+
+    @Test
+    void inOrderPacketsGiveNoSackBlock() throws UnknownHostException {
+        SelectiveRepeatReceiver receiver = new SelectiveRepeatReceiver(1, 64);
+        for (long seq_no = 1; seq_no <= 4; seq_no++)
+            receiver.receive(data(seq_no));
+
+        AckPayload ack = roundTrip(4, receiver);
+        assertEquals(4, ack.getSequenceNumber());
+        assertEquals(5, ack.getCumulative());
+        assertEquals(0, ack.getBlockCount());
+    }
+
+    @Test
+    void gapsAreEncodedAsSackBlocks() throws UnknownHostException {
+        SelectiveRepeatReceiver receiver = new SelectiveRepeatReceiver(1, 64);
+        for (long seq_no : new long[] { 1, 3, 4, 6, 9, 10 })
+            receiver.receive(data(seq_no));
+
+        AckPayload ack = roundTrip(10, receiver);
+        assertEquals(10, ack.getSequenceNumber());
+        assertEquals(2, ack.getCumulative());
+        assertEquals(3, ack.getBlockCount());
+        assertEquals(3, ack.getBlockStart(0));
+        assertEquals(5, ack.getBlockEnd(0));
+        assertEquals(6, ack.getBlockStart(1));
+        assertEquals(7, ack.getBlockEnd(1));
+        assertEquals(9, ack.getBlockStart(2));
+        assertEquals(11, ack.getBlockEnd(2));
+    }
+
+    @Test
+    void blocksBeyondMaxSackBlocksAreLeftOut() throws UnknownHostException {
+        SelectiveRepeatReceiver receiver = new SelectiveRepeatReceiver(1, 256);
+        for (long seq_no = 3; seq_no < 3 + 2 * (AckPayload.MAX_SACK_BLOCKS + 4); seq_no += 2)
+            receiver.receive(data(seq_no));
+
+        byte[] dst = new byte[AckPayload.MAX_LEN];
+        int length = AckPayload.encode(3, receiver, dst);
+        assertEquals(AckPayload.MAX_LEN, length);
+
+        AckPayload ack = AckPayload.parse(Arrays.copyOf(dst, length));
+        assertEquals(1, ack.getCumulative());
+        assertEquals(AckPayload.MAX_SACK_BLOCKS, ack.getBlockCount());
+        assertEquals(3, ack.getBlockStart(0));
+        assertEquals(4, ack.getBlockEnd(0));
+    }
+
+    @Test
+    void payloadShorterThanTheHeaderIsRejected() {
+        assertNull(AckPayload.parse(new byte[AckPayload.HEADER_LEN - 1]));
+    }
+
+    @Test
+    void blockCountIsLimitedToTheBlocksPresent() {
+        byte[] payload = new byte[AckPayload.HEADER_LEN + AckPayload.BLOCK_LEN];
+        payload[3] = 5;
+        payload[7] = 2;
+        payload[8] = (byte) 200;
+        payload[12] = 3;
+        payload[16] = 4;
+
+        AckPayload ack = AckPayload.parse(payload);
+        assertEquals(5, ack.getSequenceNumber());
+        assertEquals(2, ack.getCumulative());
+        assertEquals(1, ack.getBlockCount());
+        assertEquals(3, ack.getBlockStart(0));
+        assertEquals(4, ack.getBlockEnd(0));
+    }
+}
@@ -0,0 +1,85 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteRangeTest {
+
+    @Test
+    void noHeaderSendsTheWholeFile() {
+        assertNull(ByteRange.parse(null, 1000));
+    }
+
+    @Test
+    void firstAndLastByte() {
+        ByteRange range = ByteRange.parse("bytes=0-99", 1000);
+
+        assertTrue(range.isSatisfiable());
+        assertEquals(0, range.getStart());
+        assertEquals(100, range.getLength());
+        assertEquals("bytes 0-99/1000", range.contentRange());
+    }
+
+    @Test
+    void openEndedRangeGoesToTheEndOfTheFile() {
+        ByteRange range = ByteRange.parse("bytes=500-", 1000);
+
+        assertEquals(500, range.getStart());
+        assertEquals(500, range.getLength());
+        assertEquals("bytes 500-999/1000", range.contentRange());
+    }
+
+    @Test
+    void suffixRangeIsTheLastBytes() {
+        ByteRange range = ByteRange.parse("bytes=-100", 1000);
+
+        assertEquals(900, range.getStart());
+        assertEquals(100, range.getLength());
+    }
+
+    @Test
+    void suffixLongerThanTheFileIsTheWholeFile() {
+        ByteRange range = ByteRange.parse("bytes=-2000", 1000);
+
+        assertEquals(0, range.getStart());
+        assertEquals(1000, range.getLength());
+        assertEquals("bytes 0-999/1000", range.contentRange());
+    }
+
+    @Test
+    void lastBytePastTheEndIsClamped() {
+        ByteRange range = ByteRange.parse("bytes=900-5000", 1000);
+
+        assertEquals(900, range.getStart());
+        assertEquals(100, range.getLength());
+    }
+
+    @Test
+    void spacesAroundThePartsAreAllowed() {
+        ByteRange range = ByteRange.parse(" bytes = 10 - 19 ", 1000);
+
+        assertEquals(10, range.getStart());
+        assertEquals(10, range.getLength());
+    }
+
+    @Test
+    void rangeStartingAtTheEndIsNotSatisfiable() {
+        ByteRange range = ByteRange.parse("bytes=1000-", 1000);
+
+        assertFalse(range.isSatisfiable());
+        assertEquals("bytes */1000", range.contentRange());
+        assertFalse(ByteRange.parse("bytes=0-", 0).isSatisfiable());
+        assertFalse(ByteRange.parse("bytes=-0", 1000).isSatisfiable());
+    }
+
+    @Test
+    void unsupportedOrInvalidRangesSendTheWholeFile() {
+        assertNull(ByteRange.parse("bytes=5-3", 1000));
+        assertNull(ByteRange.parse("bytes=0-1,5-9", 1000));
+        assertNull(ByteRange.parse("items=0-5", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+        assertNull(ByteRange.parse("bytes=a-b", 1000));
+        assertNull(ByteRange.parse("bytes=99999999999999999999-", 1000));
+    }
+}
@@ -0,0 +1,136 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(UTF_8));
+    }
+
+    private static String string(ByteBuffer content) {
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    @Test
+    void secondReadIsAHit() throws IOException {
+        ContentCache cache = new ContentCache(1 << 20, false);
+        Path file = write("index.html", "<html></html>");
+
+        assertEquals("<html></html>", string(cache.read(file)));
+        assertEquals("<html></html>", string(cache.read(file)));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(13, cache.getSize());
+    }
+
+    @Test
+    void everyReadGetsItsOwnPosition() throws IOException {
+        ContentCache cache = new ContentCache(1 << 20, false);
+        Path file = write("index.html", "<html></html>");
+        cache.read(file);
+
+        ByteBuffer first = cache.read(file);
+        string(first);
+        assertEquals("<html></html>", string(cache.read(file)));
+        assertTrue(first.isReadOnly());
+    }
+
+    @Test
+    void fileRewrittenOnDiskIsReadAgain() throws IOException {
+        ContentCache cache = new ContentCache(1 << 20, false);
+        Path file = write("data.txt", "version one");
+        FileTime modified = Files.getLastModifiedTime(file);
+        cache.read(file);
+
+        // Same size, only the modification time tells them apart
+        write("data.txt", "version TWO");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 2000));
+
+        assertEquals("version TWO", string(cache.read(file)));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    void invalidatedFileIsReadAgain() throws IOException {
+        ContentCache cache = new ContentCache(1 << 20, false);
+        Path file = write("data.txt", "contents");
+        cache.read(file);
+
+        cache.invalidate(dir.resolve("./data.txt"));
+        assertEquals(0, cache.getSize());
+        cache.read(file);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void fileLargerThanTheCacheIsNotHeld() throws IOException {
+        ContentCache cache = new ContentCache(1000, false);
+        char[] big = new char[2000];
+        Arrays.fill(big, 'x');
+        Path file = write("big.txt", new String(big));
+
+        assertNull(cache.read(file));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void emptyCacheHoldsNothing() throws IOException {
+        ContentCache cache = new ContentCache(0, false);
+        assertNull(cache.read(write("index.html", "<html></html>")));
+    }
+
+    @Test
+    void offHeapContentsAreDirectBuffers() throws IOException {
+        ContentCache cache = new ContentCache(1 << 20, true);
+        ByteBuffer content = cache.read(write("index.html", "<html></html>"));
+
+        assertTrue(content.isDirect());
+        assertEquals("<html></html>", string(content));
+    }
+
+    @Test
+    void missingFileIsAnError() {
+        ContentCache cache = new ContentCache(1 << 20, false);
+        assertThrows(NoSuchFileException.class, () -> cache.read(dir.resolve("missing.txt")));
+    }
+
+    @Test
+    void scanOfFilesReadOnceKeepsThePopularFile() throws IOException {
+        int file_size = 64 << 10;
+        ContentCache cache = new ContentCache(4 << 20, false);
+        byte[] bytes = new byte[file_size];
+        Path popular = Files.write(dir.resolve("popular.bin"), bytes);
+        for (int i = 0; i < 6; i++)
+            cache.read(popular);
+
+        // Twice as many files as the cache holds, each read once
+        long files = 2 * cache.getMaxSize() / file_size;
+        for (int i = 0; i < files; i++)
+            cache.read(Files.write(dir.resolve("scan" + i + ".bin"), bytes));
+
+        long hits = cache.getHits();
+        cache.read(popular);
+        assertEquals(hits + 1, cache.getHits());
+        assertTrue(cache.getRejections() > 0);
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+}
@@ -0,0 +1,44 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void countsEachKeySeen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 5; i++)
+            sketch.increment("/popular.html");
+        sketch.increment("/rare.html");
+
+        assertEquals(5, sketch.frequency("/popular.html"));
+        assertEquals(1, sketch.frequency("/rare.html"));
+        assertEquals(0, sketch.frequency("/never.html"));
+    }
+
+    @Test
+    void countStopsAtMaxCount() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 3 * FrequencySketch.MAX_COUNT; i++)
+            sketch.increment("/popular.html");
+
+        assertEquals(FrequencySketch.MAX_COUNT, sketch.frequency("/popular.html"));
+    }
+
+    @Test
+    void countsAreHalvedAfterTheSample() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < FrequencySketch.MAX_COUNT; i++)
+            sketch.increment("/popular.html");
+
+        // Collisions only add to the counters, so until the reset the frequency stays at its maximum
+        int key = 0;
+        while (sketch.frequency("/popular.html") == FrequencySketch.MAX_COUNT && key < 100000)
+            sketch.increment(key++);
+
+        assertTrue(key < 100000, "the counters were never halved");
+        assertTrue(sketch.frequency("/popular.html") <= FrequencySketch.MAX_COUNT / 2);
+    }
+}
@@ -0,0 +1,136 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestParserTest {
+
+    private static final String POST = "POST /notes.txt HTTP/1.0\r\nHost: localhost\r\nContent-Length: 5\r\n"
+            + "Connection:  close \r\n\r\nhello";
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(UTF_8);
+    }
+
+    @Test
+    void wholeRequestIsParsed() {
+        RequestParser request = RequestParser.parse(bytes(POST));
+
+        assertTrue(request.isComplete());
+        assertFalse(request.isError());
+        assertTrue(request.isMethod("POST"));
+        assertFalse(request.isMethod("GET"));
+        assertEquals("POST", request.getMethod());
+        assertEquals("/notes.txt", request.getUri());
+        assertEquals("localhost", request.header("host"));
+        assertEquals("close", request.header("Connection"));
+        assertTrue(request.hasHeader("connection", "CLOSE"));
+        assertNull(request.header("Range"));
+        assertEquals(5, request.getContentLength());
+        assertEquals("hello", new String(request.getBody(), UTF_8));
+    }
+
+    @Test
+    void requestFedOneByteAtATimeStopsAtTheBody() {
+        RequestParser request = new RequestParser();
+        byte[] message = bytes(POST);
+        int head = POST.indexOf("hello");
+
+        for (int i = 0; i < head; i++) {
+            assertFalse(request.isHeadComplete());
+            assertEquals(1, request.feed(message, i, 1));
+        }
+        assertTrue(request.isHeadComplete());
+        assertEquals(head, request.getHeadLength());
+        assertEquals("/notes.txt", request.getUri());
+
+        // Once the head is complete the bytes fed are the body
+        assertEquals(5, request.feed(message, head, 5));
+        assertTrue(request.isComplete());
+        assertEquals("hello", new String(request.getBody(), UTF_8));
+    }
+
+    @Test
+    void feedGivesBackTheBodyThatFollowsTheHead() {
+        RequestParser request = new RequestParser();
+        byte[] message = bytes(POST);
+
+        int taken = request.feed(message, 0, message.length);
+        assertEquals(POST.indexOf("hello"), taken);
+        assertTrue(request.isHeadComplete());
+        assertFalse(request.isComplete());
+        assertEquals(0, request.getBodyLength());
+    }
+
+    @Test
+    void bareLineFeedsAndLeadingBlankLinesAreAccepted() {
+        RequestParser request = RequestParser.parse(bytes("\r\n\nGET /index.html HTTP/1.0\nRange: bytes=0-9\n\n"));
+
+        assertTrue(request.isComplete());
+        assertEquals("GET", request.getMethod());
+        assertEquals("/index.html", request.getUri());
+        assertEquals("bytes=0-9", request.header("Range"));
+        assertEquals(-1, request.getContentLength());
+    }
+
+    @Test
+    void bytesAfterTheBodyAreNotPartOfIt() {
+        RequestParser request = RequestParser.parse(bytes(POST + "\r\n\r\n"));
+
+        assertTrue(request.isComplete());
+        assertEquals("hello", new String(request.getBody(), UTF_8));
+    }
+
+    @Test
+    void incompleteHeadIsNotComplete() {
+        RequestParser request = RequestParser.parse(bytes("GET /index.html HTTP/1.0\r\nHost: local"));
+
+        assertFalse(request.isHeadComplete());
+        assertFalse(request.isError());
+        assertNull(request.getUri());
+    }
+
+    @Test
+    void malformedRequestsAreErrors() {
+        assertTrue(RequestParser.parse(bytes("GET\r\n\r\n")).isError());
+        assertTrue(RequestParser.parse(bytes("GET  HTTP/1.0\r\n\r\n")).isError());
+        assertTrue(RequestParser.parse(bytes("POST /a HTTP/1.0\r\nContent-Length: 12x\r\n\r\n")).isError());
+        assertTrue(RequestParser.parse(bytes("POST /a HTTP/1.0\r\nContent-Length: 1\r\nContent-Length: 2\r\n\r\n"))
+                .isError());
+    }
+
+    @Test
+    void headLongerThanTheLimitIsAnError() {
+        RequestParser request = new RequestParser();
+        byte[] line = bytes("GET /index.html HTTP/1.0\r\n");
+        request.feed(line, 0, line.length);
+
+        byte[] header = new byte[8192];
+        Arrays.fill(header, (byte) 'a');
+        for (int fed = 0; fed <= RequestParser.MAX_HEAD_LENGTH; fed += header.length)
+            assertEquals(header.length, request.feed(header, 0, header.length));
+
+        assertTrue(request.isError());
+        assertFalse(request.isHeadComplete());
+    }
+
+    @Test
+    void malformedRequestStopsBuffering() {
+        RequestParser request = new RequestParser();
+        byte[] bad = bytes("GET\r\n");
+        assertEquals(bad.length, request.feed(bad, 0, bad.length));
+        assertTrue(request.isError());
+        int held = request.toByteArray().length;
+
+        byte[] more = new byte[1 << 20];
+        for (int i = 0; i < 16; i++)
+            assertEquals(more.length, request.feed(more, 0, more.length));
+
+        assertEquals(held, request.toByteArray().length);
+        assertTrue(request.getBuffer().length < more.length);
+    }
+}
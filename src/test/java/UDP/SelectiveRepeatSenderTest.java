@@ -0,0 +1,171 @@
+package UDP;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends through a loop that only sends, to a channel standing for the router, which counts the packets sent
+ */
+class SelectiveRepeatSenderTest {
+
+    private static final int PACKETS = 8;
+
+    private DatagramChannel channel;
+    private DatagramChannel router;
+    private EventLoop loop;
+    private SelectiveRepeatSender sender;
+    private long started;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        router = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        router.configureBlocking(false);
+        loop = new EventLoop(channel, 2 * PACKETS);
+
+        List<Packet> packets = new ArrayList<>();
+        for (long seq_no = 1; seq_no <= PACKETS; seq_no++)
+            packets.add(packet(PacketType.DATA.getValue(), seq_no, new byte[] { (byte) seq_no }));
+
+        // A path with a 10 ms RTT, the ACKs below arrive 100 ms after the packets were sent
+        RttEstimator rtt = new RttEstimator();
+        rtt.sample(10);
+        StreamScheduler scheduler = new StreamScheduler(loop, CongestionAlgorithm.RENO.newController(rtt));
+        sender = new SelectiveRepeatSender(loop, router.getLocalAddress(), packets, PACKETS, rtt, scheduler, () -> { });
+        started = loop.now();
+        sender.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        sender.cancel();
+        channel.close();
+        router.close();
+    }
+
+    private static Packet packet(int type, long seq_no, byte[] payload) throws IOException {
+        return new Packet.Builder()
+                .setType(type)
+                .setSequenceNumber(seq_no)
+                .setPeerAddress(InetAddress.getByName("127.0.0.1"))
+                .setPortNumber(41830)
+                .setPayload(payload)
+                .create();
+    }
+
+    /**
+     * @return ACK of seq_no with the cumulative ACK and the SACK blocks given as start, end pairs
+     */
+    private static Packet ack(long seq_no, long cumulative, long... blocks) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(AckPayload.HEADER_LEN + blocks.length / 2 * AckPayload.BLOCK_LEN);
+        buf.putInt((int) seq_no).putInt((int) cumulative).put((byte) (blocks.length / 2));
+        for (long block : blocks)
+            buf.putInt((int) block);
+        return packet(PacketType.ACK.getValue(), seq_no, buf.array());
+    }
+
+    /**
+     * @return sequence numbers of the packets the router received since the last call
+     */
+    private List<Long> sent() throws IOException {
+        List<Long> seq_nos = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_JUMBO_LEN);
+        PacketView view = new PacketView();
+        while (router.receive(buf) != null) {
+            buf.flip();
+            seq_nos.add(view.wrap(buf).toPacket().getSequenceNumber());
+            buf.clear();
+        }
+        return seq_nos;
+    }
+
+    private List<Long> sentAfterDelivery() throws IOException, InterruptedException {
+        // Loopback datagrams are delivered at once, the pause only covers a loaded machine
+        Thread.sleep(50);
+        return sent();
+    }
+
+    @Test
+    void firstWindowIsSent() throws Exception {
+        List<Long> seq_nos = sentAfterDelivery();
+        assertFalse(seq_nos.isEmpty());
+        assertEquals(1L, seq_nos.get(0));
+        assertEquals(seq_nos.size(), sender.getInFlight());
+    }
+
+    @Test
+    void packetWithDupThreshSackedPacketsAfterItIsRetransmitted() throws Exception {
+        sentAfterDelivery();
+        long later = loop.now() + 100;
+
+        sender.onAck(ack(2, 1, 2, 2 + SelectiveRepeatSender.DUP_THRESH), later);
+
+        assertTrue(sentAfterDelivery().contains(1L));
+    }
+
+    @Test
+    void fewerSackedPacketsThanDupThreshDoNotRetransmit() throws Exception {
+        sentAfterDelivery();
+        long later = loop.now() + 100;
+
+        sender.onAck(ack(2, 1, 2, 1 + SelectiveRepeatSender.DUP_THRESH), later);
+
+        assertFalse(sentAfterDelivery().contains(1L));
+    }
+
+    @Test
+    void packetIsRetransmittedOnlyOnce() throws Exception {
+        sentAfterDelivery();
+        long later = loop.now() + 100;
+
+        sender.onAck(ack(4, 1, 2, 5), later);
+        assertTrue(sentAfterDelivery().contains(1L));
+
+        sender.onAck(ack(5, 1, 2, 6), later + 1);
+        assertFalse(sentAfterDelivery().contains(1L));
+    }
+
+    @Test
+    void packetInsideTheReorderingWindowIsNotRetransmitted() throws Exception {
+        sentAfterDelivery();
+
+        // The ACK arrives as the packets were just sent, it may only be reordered
+        sender.onAck(ack(4, 1, 2, 5), started);
+
+        assertFalse(sentAfterDelivery().contains(1L));
+    }
+
+    @Test
+    void cumulativeAckAcknowledgesEveryPacketBelowIt() throws Exception {
+        int in_flight = sentAfterDelivery().size();
+        long later = loop.now() + 100;
+
+        sender.onAck(ack(3, 4), later);
+
+        assertEquals(in_flight - 3, sender.getInFlight() - sentAfterDelivery().size());
+        assertFalse(sender.isComplete());
+    }
+
+    @Test
+    void everyPacketAcknowledgedCompletesTheSender() throws Exception {
+        long later = loop.now() + 100;
+        for (int round = 0; round < PACKETS && !sender.isComplete(); round++) {
+            for (long seq_no : sentAfterDelivery())
+                sender.onAck(ack(seq_no, seq_no + 1), later);
+        }
+        assertTrue(sender.isComplete());
+        assertEquals(0, sender.getInFlight());
+        assertTrue(sender.isDataAcknowledged());
+    }
+}
@@ -0,0 +1,146 @@
+package UDP;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two streams of one connection send through a loop that only sends, to a channel standing for the router
+ */
+class StreamSchedulerTest {
+
+    private static final int PACKETS = 20;
+
+    private DatagramChannel channel;
+    private DatagramChannel router;
+    private EventLoop loop;
+    private RttEstimator rtt;
+    private StreamScheduler scheduler;
+    private final List<SelectiveRepeatSender> senders = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        router = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        router.configureBlocking(false);
+        loop = new EventLoop(channel, 4 * PACKETS);
+        rtt = new RttEstimator();
+        scheduler = new StreamScheduler(loop, CongestionAlgorithm.RENO.newController(rtt));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (SelectiveRepeatSender sender : senders)
+            sender.cancel();
+        channel.close();
+        router.close();
+    }
+
+    private SelectiveRepeatSender sender(int stream_id) throws IOException {
+        List<Packet> packets = new ArrayList<>();
+        for (long seq_no = 1; seq_no <= PACKETS; seq_no++) {
+            packets.add(new Packet.Builder()
+                    .setType(PacketType.DATA.getValue())
+                    .setSequenceNumber(seq_no)
+                    .setPeerAddress(InetAddress.getByName("127.0.0.1"))
+                    .setPortNumber(41830)
+                    .setStreamId(stream_id)
+                    .setPayload(new byte[] { (byte) seq_no })
+                    .create());
+        }
+        SelectiveRepeatSender sender = new SelectiveRepeatSender(loop, router.getLocalAddress(), packets, PACKETS, rtt,
+                scheduler, () -> { });
+        senders.add(sender);
+        return sender;
+    }
+
+    private static Packet ack(int stream_id, long seq_no) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(AckPayload.HEADER_LEN);
+        buf.putInt((int) seq_no).putInt((int) seq_no + 1).put((byte) 0);
+        return new Packet.Builder()
+                .setType(PacketType.ACK.getValue())
+                .setSequenceNumber(seq_no)
+                .setPeerAddress(InetAddress.getByName("127.0.0.1"))
+                .setPortNumber(41830)
+                .setStreamId(stream_id)
+                .setPayload(buf.array())
+                .create();
+    }
+
+    /**
+     * @return stream ids of the packets the router received since the last call, in order
+     */
+    private List<Integer> sentStreams() throws IOException, InterruptedException {
+        // Loopback datagrams are delivered at once, the pause only covers a loaded machine
+        Thread.sleep(50);
+        List<Integer> streams = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_JUMBO_LEN);
+        PacketView view = new PacketView();
+        while (router.receive(buf) != null) {
+            buf.flip();
+            streams.add(view.wrap(buf).toPacket().getStreamId());
+            buf.clear();
+        }
+        return streams;
+    }
+
+    @Test
+    void firstStreamFillsTheCongestionWindowAlone() throws Exception {
+        SelectiveRepeatSender first = sender(1);
+        first.start();
+
+        assertEquals(CongestionController.INITIAL_CWND, sentStreams().size());
+        assertEquals(CongestionController.INITIAL_CWND, scheduler.getInFlight());
+    }
+
+    @Test
+    void streamsTakeTurnsOnceTheWindowHasRoom() throws Exception {
+        SelectiveRepeatSender first = sender(1);
+        SelectiveRepeatSender second = sender(3);
+        first.start();
+        second.start();
+        sentStreams();
+        assertEquals(0, second.getInFlight());
+
+        long now = loop.now();
+        for (long seq_no = 1; seq_no <= 4; seq_no++)
+            first.onAck(ack(1, seq_no), now);
+
+        List<Integer> streams = sentStreams();
+        assertTrue(streams.size() >= 4, "sent " + streams);
+        // One packet of each in turn, though the first stream could fill the window on its own
+        for (int i = 1; i < streams.size(); i++)
+            assertNotEquals(streams.get(i - 1), streams.get(i), "sent " + streams);
+        assertEquals(scheduler.getInFlight(), first.getInFlight() + second.getInFlight());
+        assertTrue(scheduler.getInFlight() <= scheduler.getCongestionController().getCwnd());
+    }
+
+    @Test
+    void cancelledStreamGivesBackItsPlaceInTheWindow() throws Exception {
+        SelectiveRepeatSender first = sender(1);
+        SelectiveRepeatSender second = sender(3);
+        first.start();
+        second.start();
+        sentStreams();
+
+        first.cancel();
+        assertEquals(0, scheduler.getInFlight());
+
+        // An ACK that acknowledges nothing still lets the scheduler fill the window
+        second.onAck(ack(3, 0), loop.now());
+        List<Integer> streams = sentStreams();
+        assertEquals(CongestionController.INITIAL_CWND, streams.size());
+        for (int stream : streams)
+            assertEquals(3, stream);
+    }
+}
@@ -0,0 +1,137 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    @Test
+    void runsTaskOnceDeadlineIsReached() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        List<Long> ran = new ArrayList<>();
+        TimerWheel.Timer timer = wheel.schedule(5, ran::add);
+
+        wheel.advance(4);
+        assertTrue(ran.isEmpty());
+        assertTrue(timer.isPending());
+
+        wheel.advance(5);
+        assertEquals(1, ran.size());
+        assertEquals(5L, ran.get(0));
+        assertFalse(timer.isPending());
+        assertEquals(0, wheel.size());
+
+        wheel.advance(100);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    void cancelledTaskNeverRuns() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        List<Long> ran = new ArrayList<>();
+        TimerWheel.Timer timer = wheel.schedule(3, ran::add);
+        wheel.cancel(timer);
+        wheel.cancel(null);
+
+        assertEquals(0, wheel.size());
+        wheel.advance(10);
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    void timerCancelledByATaskOfTheSameTickDoesNotRun() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        List<String> ran = new ArrayList<>();
+        TimerWheel.Timer victim = wheel.schedule(2, now -> ran.add("victim"));
+        // A bucket runs its most recent timer first
+        wheel.schedule(2, now -> {
+            ran.add("canceller");
+            wheel.cancel(victim);
+        });
+
+        wheel.advance(2);
+        assertEquals(Arrays.asList("canceller"), ran);
+    }
+
+    @Test
+    void deadlineBeyondOneTurnWaitsItsRounds() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 8, 0);
+        List<Long> ran = new ArrayList<>();
+        wheel.schedule(20, ran::add);
+
+        wheel.advance(4);
+        wheel.advance(12);
+        wheel.advance(19);
+        assertTrue(ran.isEmpty());
+
+        wheel.advance(20);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    void deadlineInThePastRunsOnNextAdvance() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        wheel.advance(50);
+        List<Long> ran = new ArrayList<>();
+        wheel.schedule(10, ran::add);
+
+        wheel.advance(50);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    void tasksRunInDeadlineOrder() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        List<Integer> ran = new ArrayList<>();
+        wheel.schedule(30, now -> ran.add(30));
+        wheel.schedule(10, now -> ran.add(10));
+        wheel.schedule(20, now -> ran.add(20));
+
+        wheel.advance(40);
+        assertEquals(Arrays.asList(10, 20, 30), ran);
+    }
+
+    @Test
+    void taskCanScheduleAnotherTimer() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        List<Long> ran = new ArrayList<>();
+        wheel.schedule(5, now -> wheel.schedule(now + 5, ran::add));
+
+        wheel.advance(5);
+        assertTrue(ran.isEmpty());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(10);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    void nextExpiryIsTheEarliestPendingDeadline() throws IOException {
+        TimerWheel wheel = new TimerWheel(1, 16, 0);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiry());
+
+        TimerWheel.Timer early = wheel.schedule(7, now -> { });
+        wheel.schedule(12, now -> { });
+        assertEquals(7, wheel.nextExpiry());
+
+        wheel.cancel(early);
+        assertEquals(12, wheel.nextExpiry());
+
+        wheel.advance(12);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiry());
+    }
+
+    @Test
+    void nextExpiryBeyondOneTurnIsNoLaterThanTheTurn() {
+        TimerWheel wheel = new TimerWheel(1, 8, 0);
+        wheel.schedule(100, now -> { });
+        long next = wheel.nextExpiry();
+        assertTrue(next > 0 && next <= 100, "next expiry " + next);
+    }
+}
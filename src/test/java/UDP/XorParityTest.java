@@ -0,0 +1,118 @@
+package UDP;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class XorParityTest {
+
+    private static Packet packet(int type, long seq_no, String payload) throws UnknownHostException {
+        return new Packet.Builder()
+                .setType(type)
+                .setSequenceNumber(seq_no)
+                .setPeerAddress(InetAddress.getByName("127.0.0.1"))
+                .setPortNumber(41830)
+                .setStreamId(3)
+                .setPayload(payload.getBytes(UTF_8))
+                .create();
+    }
+
+    /**
+     * @return DATA packets from seq_no 10 with payloads of different lengths, followed by the FIN
+     */
+    private static List<Packet> message() throws UnknownHostException {
+        List<Packet> packets = new ArrayList<>();
+        String[] payloads = { "GET /big.txt", "HTTP/1.0", "a longer payload than the others", "x", "" };
+        for (int i = 0; i < payloads.length; i++)
+            packets.add(packet(PacketType.DATA.getValue(), 10 + i, payloads[i]));
+        packets.add(packet(PacketType.FIN.getValue(), 10 + payloads.length, ""));
+        return packets;
+    }
+
+    @Test
+    void oneParityPacketPerGroup() throws UnknownHostException {
+        List<Packet> packets = message();
+        List<Packet> parity = XorParity.encode(packets, 4);
+
+        assertEquals(2, parity.size());
+        assertEquals(PacketType.PARITY.getValue(), parity.get(0).getType());
+        assertEquals(10, parity.get(0).getSequenceNumber());
+        assertEquals(13, XorParity.lastSequenceNumber(parity.get(0)));
+        assertEquals(14, parity.get(1).getSequenceNumber());
+        assertEquals(15, XorParity.lastSequenceNumber(parity.get(1)));
+    }
+
+    @Test
+    void everySinglePacketLostIsRebuilt() throws UnknownHostException {
+        List<Packet> packets = message();
+        Packet parity = XorParity.encode(packets, packets.size()).get(0);
+
+        for (Packet lost : packets) {
+            XorParity receiver = new XorParity();
+            for (Packet packet : packets) {
+                if (packet != lost)
+                    receiver.add(packet, 10);
+            }
+
+            Packet rebuilt = receiver.recover(parity);
+            assertNotNull(rebuilt, "packet " + lost.getSequenceNumber());
+            assertEquals(lost.getSequenceNumber(), rebuilt.getSequenceNumber());
+            assertEquals(lost.getType(), rebuilt.getType());
+            assertEquals(lost.getStreamId(), rebuilt.getStreamId());
+            assertArrayEquals(lost.getPayload(), rebuilt.getPayload());
+        }
+    }
+
+    @Test
+    void twoPacketsLostCannotBeRebuilt() throws UnknownHostException {
+        List<Packet> packets = message();
+        Packet parity = XorParity.encode(packets, packets.size()).get(0);
+
+        XorParity receiver = new XorParity();
+        for (Packet packet : packets.subList(2, packets.size()))
+            receiver.add(packet, 10);
+
+        assertNull(receiver.recover(parity));
+    }
+
+    @Test
+    void nothingIsRebuiltWhenTheGroupArrivedWhole() throws UnknownHostException {
+        List<Packet> packets = message();
+        Packet parity = XorParity.encode(packets, packets.size()).get(0);
+
+        XorParity receiver = new XorParity();
+        for (Packet packet : packets)
+            receiver.add(packet, 10);
+
+        assertNull(receiver.recover(parity));
+    }
+
+    @Test
+    void groupsAreRepairedIndependently() throws UnknownHostException {
+        List<Packet> packets = message();
+        List<Packet> parity = XorParity.encode(packets, 3);
+
+        XorParity receiver = new XorParity();
+        for (Packet packet : packets) {
+            if (packet.getSequenceNumber() != 11 && packet.getSequenceNumber() != 14)
+                receiver.add(packet, 10);
+        }
+
+        assertEquals(11, receiver.recover(parity.get(0)).getSequenceNumber());
+        Packet rebuilt = receiver.recover(parity.get(1));
+        assertEquals(14, rebuilt.getSequenceNumber());
+        assertEquals(0, rebuilt.getPayload().length);
+    }
+
+    @Test
+    void truncatedParityPayloadIsIgnored() throws UnknownHostException {
+        Packet parity = packet(PacketType.PARITY.getValue(), 10, "ab");
+        assertNull(new XorParity().recover(parity));
+    }
+}